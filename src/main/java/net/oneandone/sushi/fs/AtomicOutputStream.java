@@ -0,0 +1,116 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes to a temporary sibling of the target and moves it over the target on close, so readers see either the old
+ * or the new content. If a write fails, close discards the temporary file and leaves the target untouched.
+ */
+public class AtomicOutputStream extends FilterOutputStream {
+    protected final Node<?> target;
+    protected final Node<?> temp;
+    private boolean failed;
+    private boolean closed;
+
+    public AtomicOutputStream(Node<?> target, Node<?> temp, OutputStream out) {
+        super(out);
+        this.target = target;
+        this.temp = temp;
+        this.failed = false;
+        this.closed = false;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        try {
+            out.write(b);
+        } catch (IOException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int ofs, int len) throws IOException {
+        try {
+            out.write(b, ofs, len);
+        } catch (IOException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    /** Closes the stream without replacing the target. */
+    public void abort() throws IOException {
+        failed = true;
+        close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (!failed) {
+                finish();
+            }
+            out.close();
+            if (!failed) {
+                replace();
+                return;
+            }
+        } catch (IOException e) {
+            try {
+                discard();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        discard();
+    }
+
+    /** Called on close before the underlying stream is closed, if all writes succeeded. */
+    protected void finish() throws IOException {
+    }
+
+    /** Called on close with the temporary file complete. */
+    protected void replace() throws IOException {
+        temp.move(target, true);
+    }
+
+    private void discard() throws IOException {
+        if (temp.exists()) {
+            temp.deleteFile();
+        }
+    }
+}
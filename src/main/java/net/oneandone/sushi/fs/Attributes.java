@@ -0,0 +1,61 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs;
+
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.UserPrincipal;
+
+/**
+ * Snapshot of a node's metadata, as returned by Node.getAttributes(). Values do not follow later changes to the node;
+ * bulk scans use it to ask the filesystem once per node instead of once per property.
+ */
+public class Attributes {
+    public static final Attributes NOT_FOUND = new Attributes(false, false, false, false, 0, 0, null, null, null);
+
+    /** true for broken links */
+    public final boolean exists;
+
+    public final boolean link;
+
+    /** follows links */
+    public final boolean file;
+
+    /** follows links */
+    public final boolean directory;
+
+    /** 0 if this is not a file */
+    public final long size;
+
+    public final long lastModified;
+
+    /** null if the filesystem does not support modes */
+    public final String permissions;
+    public final UserPrincipal owner;
+    public final GroupPrincipal group;
+
+    public Attributes(boolean exists, boolean link, boolean file, boolean directory, long size, long lastModified,
+                      String permissions, UserPrincipal owner, GroupPrincipal group) {
+        this.exists = exists;
+        this.link = link;
+        this.file = file;
+        this.directory = directory;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.permissions = permissions;
+        this.owner = owner;
+        this.group = group;
+    }
+}
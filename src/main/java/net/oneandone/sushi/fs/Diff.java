@@ -128,16 +128,24 @@ public class Diff {
         }
     }
 
+    /** Reads the attributes of both sides once; files with different sizes are reported without comparing content. */
     public void header(Node left, Node right, String relative, StringBuilder result) throws IOException {
-        if (!left.exists()) {
-            right.checkFile();
+        Attributes leftAttributes;
+        Attributes rightAttributes;
+
+        leftAttributes = left.getAttributes();
+        rightAttributes = right.getAttributes();
+        if (!leftAttributes.exists) {
+            if (!rightAttributes.file) {
+                throw rightAttributes.exists ? new FileNotFoundException(right, "file not found - this is a directory") : new FileNotFoundException(right);
+            }
             header('A', relative, result);
-        } else if (!right.exists()) {
+        } else if (!rightAttributes.exists) {
             header('R', relative, result);
-        } else if (left.diff(right)) {
+        } else if ((leftAttributes.file && rightAttributes.file && leftAttributes.size != rightAttributes.size) || left.diff(right)) {
             header('M', relative, result);
-        } else if (left.getRoot().getFilesystem().getFeatures().modes
-                && !left.getPermissions().equals(right.getPermissions())) {
+        } else if (leftAttributes.permissions != null && rightAttributes.permissions != null
+                && !leftAttributes.permissions.equals(rightAttributes.permissions)) {
             header('m', relative, result);
         } else {
             // nothing
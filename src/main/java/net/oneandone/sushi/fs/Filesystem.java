@@ -20,6 +20,13 @@ import net.oneandone.sushi.util.Separator;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Filesystem classes built into sushi will fail with NoClassDefFound the optional maven dependencies are not available.
@@ -44,11 +51,14 @@ public abstract class Filesystem {
     private final World world;
     private final Features features;
     private final String scheme;
+    /** null for a default executor */
+    private Executor executor;
 
     public Filesystem(World world, Features features, String scheme) {
         this.world = world;
         this.features = features;
         this.scheme = scheme;
+        this.executor = null;
     }
 
     public World getWorld() {
@@ -65,6 +75,73 @@ public abstract class Filesystem {
 
     public abstract Node node(URI uri, Object extra) throws NodeInstantiationException;
 
+    //-- asynchronous io
+
+    public synchronized Executor getExecutor() {
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread;
+
+                    thread = new Thread(r, scheme + "-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /** @param executor to run blocking calls for the asynchronous Node methods */
+    public synchronized void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Runs a blocking call on the executor. Cancelling the future interrupts the call if it has started, and skips it
+     * otherwise.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> callable) {
+        CompletableFuture<T> result;
+        AtomicReference<Thread> running;
+
+        result = new CompletableFuture<>();
+        running = new AtomicReference<>();
+        getExecutor().execute(() -> {
+            running.set(Thread.currentThread());
+            try {
+                // checked after publishing the thread: a cancel before set() sees no thread to interrupt
+                if (!result.isDone()) {
+                    result.complete(callable.call());
+                }
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                synchronized (running) {
+                    running.set(null);
+                    // don't leave the pool thread interrupted
+                    Thread.interrupted();
+                }
+            }
+        });
+        result.whenComplete((value, e) -> {
+            Thread thread;
+
+            if (result.isCancelled()) {
+                synchronized (running) {
+                    thread = running.get();
+                    if (thread != null) {
+                        thread.interrupt();
+                    }
+                }
+            }
+        });
+        return result;
+    }
+
     /**
      * Helper Method for opaquePath implementations
      */
@@ -20,7 +20,6 @@ import net.oneandone.sushi.io.Buffer;
 import net.oneandone.sushi.io.LineFormat;
 import net.oneandone.sushi.io.LineReader;
 import net.oneandone.sushi.util.Strings;
-import net.oneandone.sushi.xml.Builder;
 import net.oneandone.sushi.xml.Serializer;
 import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
@@ -44,6 +43,8 @@ import java.io.Serializable;
 import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.attribute.GroupPrincipal;
 import java.nio.file.attribute.UserPrincipal;
 import java.security.MessageDigest;
@@ -51,7 +52,10 @@ import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -151,6 +155,56 @@ public abstract class Node<T extends Node> {
      */
     public abstract OutputStream newOutputStream(boolean append) throws NewOutputStreamException;
 
+    public OutputStream newAtomicOutputStream() throws NewOutputStreamException {
+        return newAtomicOutputStream(false);
+    }
+
+    /**
+     * Create a stream that replaces this node on close: data goes to a hidden sibling that's moved over this node
+     * when the stream is closed, so readers never see partial content. Filesystems without native move return
+     * the normal stream - memory and svn nodes publish content on close anyway. FileNodes keep the permissions and,
+     * where allowed, owner and group of the replaced file. Ssh servers without posix-rename cannot replace existing
+     * files; closing the stream fails with a MoveException there.
+     *
+     * @param sync to flush data to the storage device before replacing; ignored by filesystems that cannot sync
+     */
+    public OutputStream newAtomicOutputStream(boolean sync) throws NewOutputStreamException {
+        Node<?> parent;
+        Node<?> temp;
+
+        parent = getParent();
+        if (parent == null || !getRoot().getFilesystem().getFeatures().nativeMove) {
+            return newOutputStream(false);
+        }
+        try {
+            if (isDirectory()) {
+                throw new NewDirectoryOutputStreamException(this);
+            }
+            temp = atomicTemp(parent);
+            return new AtomicOutputStream(this, temp, temp.newOutputStream());
+        } catch (NewOutputStreamException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new NewOutputStreamException(this, e);
+        }
+    }
+
+    private Node<?> atomicTemp(Node<?> parent) throws IOException {
+        Node<?> temp;
+
+        do {
+            temp = parent.join("." + getName() + ".writing-" + Long.toHexString(System.nanoTime()));
+        } while (temp.exists());
+        return temp;
+    }
+
+    public NodeWriter newAtomicWriter() throws IOException {
+        String encoding;
+
+        encoding = getWorld().getSettings().encoding;
+        return new NodeWriter(this, newAtomicOutputStream(), encoding);
+    }
+
     public LineReader newLineReader() throws IOException {
         return newLineReader(getWorld().getSettings().lineFormat);
     }
@@ -188,6 +242,27 @@ public abstract class Node<T extends Node> {
      */
     public abstract List<T> list() throws ListException, DirectoryNotFoundException;
 
+    /**
+     * Lists this node and its sub directories down to the specified depth in bulk, for walks that visit the whole tree.
+     * Keys are node paths, values are child lists as returned by list(), i.e. null for files. Directories at the depth
+     * limit have no entry.
+     *
+     * @return null if the filesystem has no bulk listing; use list() instead
+     */
+    public Map<String, List<T>> listTree(int depth) throws IOException {
+        return listTree(depth, null);
+    }
+
+    /**
+     * Like listTree(depth), and reports attribute snapshots of the listed nodes. Snapshots are not cached in the nodes,
+     * they are only valid while the caller uses the listing.
+     *
+     * @param attributes receives snapshots keyed by node path, for nodes where the listing provides them; null to ignore
+     */
+    public Map<String, List<T>> listTree(int depth, Map<String, Attributes> attributes) throws IOException {
+        return null;
+    }
+
     /**
      * Fails if the directory already exists. Features define whether is operation is atomic.
      * @return this
@@ -278,6 +353,78 @@ public abstract class Node<T extends Node> {
         return (T) this;
     }
 
+    /**
+     * Like deleteTree, but deletes subdirectories concurrently with up to parallelism threads.
+     * This default deletes sequentially; filesystems with a parallel implementation override it.
+     */
+    public T deleteTree(int parallelism) throws NodeNotFoundException, DeleteException {
+        return deleteTree();
+    }
+
+    /**
+     * Renames this node to a hidden sibling and deletes the sibling on the filesystem's executor, so this node is gone
+     * when the method returns. Filesystems without native move skip the rename, i.e. the node disappears when the
+     * background delete has finished.
+     *
+     * @return completes when the tree is deleted
+     */
+    public CompletableFuture<Void> deleteTreeInBackground(int parallelism) throws NodeNotFoundException, DeleteException {
+        Node<?> trash;
+
+        try {
+            trash = moveToTrash();
+        } catch (NodeNotFoundException | DeleteException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new DeleteException(this, e);
+        }
+        return getRoot().getFilesystem().submit(() -> {
+            trash.deleteTree(parallelism);
+            return null;
+        });
+    }
+
+    /** @return the node to delete */
+    private Node<?> moveToTrash() throws IOException {
+        Node<?> parent;
+        Node<?> trash;
+
+        checkExists();
+        parent = getParent();
+        if (parent == null || !getRoot().getFilesystem().getFeatures().nativeMove) {
+            return this;
+        }
+        do {
+            trash = parent.join("." + getName() + ".deleting-" + Long.toHexString(System.nanoTime()));
+        } while (trash.exists());
+        move(trash);
+        return trash;
+    }
+
+    //-- asynchronous variants, running on the filesystem's executor unless overridden with native implementations
+
+    public CompletableFuture<byte[]> readBytesAsync() {
+        return getRoot().getFilesystem().submit(this::readBytes);
+    }
+
+    public CompletableFuture<Void> writeBytesAsync(byte... bytes) {
+        return getRoot().getFilesystem().submit(() -> {
+            writeBytes(bytes);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> copyAsync(Node dest) {
+        return getRoot().getFilesystem().submit(() -> {
+            copy(dest);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Long> sizeAsync() {
+        return getRoot().getFilesystem().submit(this::size);
+    }
+
     //-- status methods
 
     /** Throws a LengthException if this node is not a file. */
@@ -310,6 +457,38 @@ public abstract class Node<T extends Node> {
     /** @return true for links to files or directories or dangling links */
     public abstract boolean isLink() throws ExistsException;
 
+    /**
+     * Watches this directory tree and passes changed nodes to callback, see Watch. This default polls every delay
+     * milliseconds and compares attribute snapshots; close the result to stop watching.
+     */
+    public Watch<T> watch(long delay, Consumer<List<T>> callback) throws IOException {
+        checkDirectory();
+        return new PollingWatch<>((T) this, delay, callback);
+    }
+
+    /**
+     * Snapshot of the status methods above. This default asks for every property separately; filesystems override it
+     * to read all of them at once.
+     *
+     * @return Attributes.NOT_FOUND if this node does not exist
+     */
+    public Attributes getAttributes() throws IOException {
+        boolean link;
+        boolean file;
+        boolean directory;
+        boolean modes;
+
+        if (!exists()) {
+            return Attributes.NOT_FOUND;
+        }
+        link = isLink();
+        file = isFile();
+        directory = isDirectory();
+        modes = getRoot().getFilesystem().getFeatures().modes;
+        return new Attributes(true, link, file, directory, file ? size() : 0, file || directory ? getLastModified() : 0,
+                modes ? getPermissions() : null, modes ? getOwner() : null, modes ? getGroup() : null);
+    }
+
     public T checkExists() throws ExistsException, NodeNotFoundException {
         if (!exists()) {
             throw new NodeNotFoundException(this);
@@ -505,6 +684,22 @@ public abstract class Node<T extends Node> {
         }
     }
 
+    /**
+     * Read-only view of the file content. This default reads the file into a heap buffer; FileNodes and stored
+     * zip entries are mapped instead.
+     */
+    public ByteBuffer map() throws IOException {
+        return ByteBuffer.wrap(readBytes()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Read-only channel on the file content. This default reads from newInputStream, seeking backwards re-opens the
+     * stream; FileNodes return a FileChannel.
+     */
+    public SeekableByteChannel newByteChannel() throws IOException {
+        return new NodeByteChannel(this);
+    }
+
     /**
      * Reads all chars of the node.  Do not use this method on large files because it's memory consuming: the string
      * is created from the byte array returned by readBytes.
@@ -546,12 +741,7 @@ public abstract class Node<T extends Node> {
     }
 
     public Document readXml() throws IOException, SAXException {
-        Builder builder;
-
-        builder = getWorld().getXml().getBuilder();
-        synchronized (builder) {
-            return builder.parse(this);
-        }
+        return getWorld().getXml().getBuilder().parse(this);
     }
 
     public Transformer readXsl() throws IOException, TransformerConfigurationException {
@@ -761,14 +951,22 @@ public abstract class Node<T extends Node> {
      * @return dest
      */
     public Node copyFile(Node dest) throws FileNotFoundException, CopyException {
-        try (OutputStream out = dest.newOutputStream()) {
-            copyFileTo(out);
+        dest.copyFileFrom(this);
+        return this;
+    }
+
+    /**
+     * Overwrites this file with the content of src. This is the default implementation of copyFile; override it to
+     * provide a faster path for particular sources.
+     */
+    public void copyFileFrom(Node src) throws FileNotFoundException, CopyException {
+        try (OutputStream out = newOutputStream()) {
+            src.copyFileTo(out);
         } catch (FileNotFoundException e) {
             throw e;
         } catch (IOException e) {
-            throw new CopyException(this, dest, e);
+            throw new CopyException(src, this, e);
         }
-        return this;
     }
 
     /**
@@ -0,0 +1,124 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Read-only channel for nodes without native channels. Reads from an input stream; seeking forward skips, seeking
+ * backward re-opens the stream.
+ */
+class NodeByteChannel implements SeekableByteChannel {
+    private final Node<?> node;
+    private final long size;
+    private final byte[] transfer;
+    /** null if closed */
+    private InputStream src;
+    /** position of src */
+    private long streamPosition;
+    private long position;
+
+    NodeByteChannel(Node<?> node) throws IOException {
+        this.node = node;
+        this.size = node.size();
+        this.transfer = new byte[8192];
+        this.src = node.newInputStream();
+        this.streamPosition = 0;
+        this.position = 0;
+    }
+
+    @Override
+    public int read(ByteBuffer dest) throws IOException {
+        int count;
+
+        ensureOpen();
+        if (position >= size) {
+            return -1;
+        }
+        if (position < streamPosition) {
+            src.close();
+            src = node.newInputStream();
+            streamPosition = 0;
+        }
+        if (Node.skip(src, position - streamPosition)) {
+            return -1;
+        }
+        streamPosition = position;
+        count = src.read(transfer, 0, Math.min(transfer.length, dest.remaining()));
+        if (count > 0) {
+            dest.put(transfer, 0, count);
+            streamPosition += count;
+            position += count;
+        }
+        return count;
+    }
+
+    @Override
+    public int write(ByteBuffer buffer) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("negative position: " + newPosition);
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long newSize) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return src != null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (src != null) {
+            src.close();
+            src = null;
+        }
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (src == null) {
+            throw new ClosedChannelException();
+        }
+    }
+}
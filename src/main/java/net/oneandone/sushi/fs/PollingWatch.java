@@ -0,0 +1,100 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/** Compares attribute snapshots of the whole tree every delay milliseconds. Works for all filesystems. */
+public class PollingWatch<T extends Node> extends Watch<T> {
+    /** accessed by the watch thread only, once started */
+    private Map<String, Attributes> previous;
+
+    /** Takes the first snapshot before returning, so every later change is reported. */
+    public PollingWatch(T root, long delay, Consumer<List<T>> callback) throws IOException {
+        super(root, delay, callback);
+        this.previous = scan();
+        start();
+    }
+
+    @Override
+    protected void loop() throws IOException, InterruptedException {
+        Map<String, Attributes> current;
+        List<T> changed;
+
+        while (true) {
+            Thread.sleep(delay);
+            current = scan();
+            changed = new ArrayList<>();
+            for (Map.Entry<String, Attributes> entry : current.entrySet()) {
+                if (!same(previous.get(entry.getKey()), entry.getValue())) {
+                    changed.add((T) root.join(entry.getKey()));
+                }
+            }
+            for (String path : previous.keySet()) {
+                if (!current.containsKey(path)) {
+                    changed.add((T) root.join(path));
+                }
+            }
+            previous = current;
+            deliver(changed);
+        }
+    }
+
+    /** @return attributes by path relative to root; does not follow links */
+    private Map<String, Attributes> scan() throws IOException {
+        Map<String, Attributes> result;
+
+        result = new HashMap<>();
+        scan(root, "", result);
+        return result;
+    }
+
+    private static void scan(Node<?> directory, String prefix, Map<String, Attributes> result) throws IOException {
+        List<? extends Node> children;
+        Attributes attributes;
+        String path;
+
+        try {
+            children = directory.list();
+        } catch (DirectoryNotFoundException e) {
+            // removed while scanning
+            return;
+        }
+        if (children == null) {
+            return;
+        }
+        for (Node<?> child : children) {
+            attributes = child.getAttributes();
+            if (attributes.exists) {
+                path = prefix + child.getName();
+                result.put(path, attributes);
+                if (attributes.directory && !attributes.link) {
+                    scan(child, path + Filesystem.SEPARATOR_CHAR, result);
+                }
+            }
+        }
+    }
+
+    private static boolean same(Attributes left, Attributes right) {
+        return left != null && left.file == right.file && left.directory == right.directory && left.link == right.link
+                && left.size == right.size && left.lastModified == right.lastModified;
+    }
+}
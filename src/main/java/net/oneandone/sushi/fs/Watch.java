@@ -0,0 +1,91 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Watches a directory tree on a daemon thread and passes changed nodes - created, modified or deleted - to a callback.
+ * Changes are coalesced into one callback per delay milliseconds at most. A failing scan or callback stops the watch;
+ * close reports the failure.
+ */
+public abstract class Watch<T extends Node> implements AutoCloseable {
+    protected final T root;
+    protected final long delay;
+    private final Consumer<List<T>> callback;
+    private final Thread thread;
+    private volatile Throwable failure;
+
+    protected Watch(T root, long delay, Consumer<List<T>> callback) {
+        this.root = root;
+        this.delay = delay;
+        this.callback = callback;
+        this.thread = new Thread(this::run, "watch " + root);
+        this.thread.setDaemon(true);
+        this.failure = null;
+    }
+
+    public T getRoot() {
+        return root;
+    }
+
+    /** Call at the end of the constructor of derived classes */
+    protected void start() {
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            loop();
+        } catch (InterruptedException e) {
+            // closed
+        } catch (Exception | Error e) {
+            failure = e;
+        }
+    }
+
+    /** Watches until interrupted */
+    protected abstract void loop() throws IOException, InterruptedException;
+
+    protected void deliver(Collection<T> changed) {
+        if (!changed.isEmpty()) {
+            callback.accept(new ArrayList<>(changed));
+        }
+    }
+
+    /** Stops watching; may be invoked from the callback. */
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException(e.getMessage());
+            }
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure != null) {
+            throw new IOException("watch failed: " + root, failure);
+        }
+    }
+}
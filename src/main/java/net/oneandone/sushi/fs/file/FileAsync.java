@@ -0,0 +1,188 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.file;
+
+import net.oneandone.sushi.fs.FileNotFoundException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/** Chains AsynchronousFileChannel calls; cancelling a future closes its channels, which aborts pending operations. */
+final class FileAsync {
+    private static final int CHUNK = 64 * 1024;
+
+    public static CompletableFuture<byte[]> readBytes(FileNode file) {
+        CompletableFuture<byte[]> result;
+        AsynchronousFileChannel channel;
+        long size;
+
+        result = new CompletableFuture<>();
+        try {
+            channel = open(file, StandardOpenOption.READ);
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        closeWhenDone(result, channel);
+        try {
+            size = channel.size();
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        if (size > Integer.MAX_VALUE - 8) {
+            result.completeExceptionally(new IOException(file + ": file too large: " + size));
+            return result;
+        }
+        read(channel, ByteBuffer.allocate((int) size), result);
+        return result;
+    }
+
+    private static void read(AsynchronousFileChannel channel, ByteBuffer buffer, CompletableFuture<byte[]> result) {
+        channel.read(buffer, buffer.position(), null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer count, Void attachment) {
+                if (!buffer.hasRemaining()) {
+                    result.complete(buffer.array());
+                } else if (count == -1) {
+                    // truncated while reading
+                    result.complete(Arrays.copyOf(buffer.array(), buffer.position()));
+                } else {
+                    channel.read(buffer, buffer.position(), null, this);
+                }
+            }
+
+            @Override
+            public void failed(Throwable e, Void attachment) {
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    public static CompletableFuture<Void> writeBytes(FileNode file, byte[] bytes) {
+        CompletableFuture<Void> result;
+        AsynchronousFileChannel channel;
+
+        result = new CompletableFuture<>();
+        try {
+            channel = open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        closeWhenDone(result, channel);
+        write(channel, ByteBuffer.wrap(bytes), 0, result, () -> result.complete(null));
+        return result;
+    }
+
+    public static CompletableFuture<Void> copy(FileNode src, FileNode dest) {
+        CompletableFuture<Void> result;
+        AsynchronousFileChannel in;
+        AsynchronousFileChannel out;
+
+        result = new CompletableFuture<>();
+        try {
+            in = open(src, StandardOpenOption.READ);
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        closeWhenDone(result, in);
+        try {
+            out = open(dest, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        closeWhenDone(result, out);
+        copy(in, out, ByteBuffer.allocate(CHUNK), 0, result);
+        return result;
+    }
+
+    private static void copy(AsynchronousFileChannel in, AsynchronousFileChannel out, ByteBuffer buffer, long position,
+                             CompletableFuture<Void> result) {
+        buffer.clear();
+        in.read(buffer, position, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer count, Void attachment) {
+                if (count == -1) {
+                    result.complete(null);
+                } else {
+                    buffer.flip();
+                    write(out, buffer, position, result, () -> copy(in, out, buffer, position + count, result));
+                }
+            }
+
+            @Override
+            public void failed(Throwable e, Void attachment) {
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    /** Writes the remaining buffer at position and runs next when done. */
+    private static void write(AsynchronousFileChannel channel, ByteBuffer buffer, long position,
+                              CompletableFuture<?> result, Runnable next) {
+        channel.write(buffer, position, null, new CompletionHandler<Integer, Void>() {
+            private long pos = position;
+
+            @Override
+            public void completed(Integer count, Void attachment) {
+                pos += count;
+                if (buffer.hasRemaining()) {
+                    channel.write(buffer, pos, null, this);
+                } else {
+                    next.run();
+                }
+            }
+
+            @Override
+            public void failed(Throwable e, Void attachment) {
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    private static AsynchronousFileChannel open(FileNode file, StandardOpenOption... options) throws IOException {
+        if (file.isDirectory()) {
+            throw new FileNotFoundException(file, "file not found - this is a directory");
+        }
+        try {
+            return AsynchronousFileChannel.open(file.toPath(), options);
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(file, e);
+        }
+    }
+
+    private static void closeWhenDone(CompletableFuture<?> result, AsynchronousFileChannel channel) {
+        result.whenComplete((value, e) -> {
+            try {
+                channel.close();
+            } catch (IOException suppressed) {
+                // nothing to report to - the future is already done
+            }
+        });
+    }
+
+    private FileAsync() {
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.file;
+
+import net.oneandone.sushi.fs.AtomicOutputStream;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/** Replaces the target with a rename; with sync, the data and the rename are forced to disk. */
+class FileAtomicOutputStream extends AtomicOutputStream {
+    private final FileChannel channel;
+    private final boolean sync;
+
+    FileAtomicOutputStream(FileNode target, FileNode temp, FileChannel channel, boolean sync) {
+        super(target, temp, Channels.newOutputStream(channel));
+        this.channel = channel;
+        this.sync = sync;
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        if (sync) {
+            channel.force(true);
+        }
+    }
+
+    @Override
+    protected void replace() throws IOException {
+        Path dest;
+
+        dest = ((FileNode) target).toPath();
+        try {
+            Files.move(((FileNode) temp).toPath(), dest, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            super.replace();
+        }
+        if (sync) {
+            syncDirectory(dest.getParent());
+        }
+    }
+
+    private static void syncDirectory(Path directory) {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // directories cannot be opened on all platforms, e.g. Windows - the rename is durable there anyway
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package net.oneandone.sushi.fs.file;
 
 import net.oneandone.sushi.archive.Archive;
+import net.oneandone.sushi.fs.Attributes;
 import net.oneandone.sushi.fs.CopyFileFromException;
 import net.oneandone.sushi.fs.CopyFileToException;
 import net.oneandone.sushi.fs.DeleteException;
@@ -38,6 +39,7 @@ import net.oneandone.sushi.fs.NodeNotFoundException;
 import net.oneandone.sushi.fs.ReadLinkException;
 import net.oneandone.sushi.fs.SetLastModifiedException;
 import net.oneandone.sushi.fs.SizeException;
+import net.oneandone.sushi.fs.Watch;
 import net.oneandone.sushi.fs.zip.ZipFilesystem;
 import net.oneandone.sushi.fs.zip.ZipNode;
 import net.oneandone.sushi.io.Buffer;
@@ -48,15 +50,22 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileOwnerAttributeView;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.GroupPrincipal;
@@ -64,8 +73,14 @@ import java.nio.file.attribute.PosixFileAttributeView;
 import java.nio.file.attribute.PosixFileAttributes;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
 
 /**
  * Represents a file, directory, link or something not yet created. Replacement for java.io.File or java.nio.Path. </p>
@@ -290,6 +305,96 @@ public class FileNode extends Node<FileNode> {
         }
     }
 
+    //-- asynchronous variants with AsynchronousFileChannel; sizeAsync stays on the executor because there's no asynchronous stat
+
+    @Override
+    public CompletableFuture<byte[]> readBytesAsync() {
+        return FileAsync.readBytes(this);
+    }
+
+    @Override
+    public CompletableFuture<Void> writeBytesAsync(byte... bytes) {
+        return FileAsync.writeBytes(this, bytes);
+    }
+
+    /** Copies files natively if dest is a FileNode, directories on the executor. */
+    @Override
+    public CompletableFuture<Void> copyAsync(Node dest) {
+        if (dest instanceof FileNode && !isDirectory()) {
+            return FileAsync.copy(this, (FileNode) dest);
+        }
+        return super.copyAsync(dest);
+    }
+
+    /**
+     * Creates the temporary file with CREATE_NEW, so concurrent writers never share it. The temporary file gets the
+     * permissions, owner and group of an existing file before it replaces it.
+     */
+    @Override
+    public OutputStream newAtomicOutputStream(boolean sync) throws NewOutputStreamException {
+        FileNode parent;
+        FileNode temp;
+        FileChannel channel;
+
+        parent = getParent();
+        if (parent == null) {
+            return newOutputStream(false);
+        }
+        if (isDirectory()) {
+            throw new NewDirectoryOutputStreamException(this);
+        }
+        try {
+            while (true) {
+                temp = parent.join("." + getName() + ".writing-" + Long.toHexString(System.nanoTime()));
+                try {
+                    channel = FileChannel.open(temp.path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                    break;
+                } catch (FileAlreadyExistsException e) {
+                    // try next name
+                }
+            }
+        } catch (IOException e) {
+            throw new NewOutputStreamException(this, e);
+        }
+        try {
+            copyMode(temp.path);
+        } catch (IOException e) {
+            try {
+                channel.close();
+                Files.deleteIfExists(temp.path);
+            } catch (IOException e2) {
+                e.addSuppressed(e2);
+            }
+            throw new NewOutputStreamException(this, e);
+        }
+        return new FileAtomicOutputStream(this, temp, channel, sync);
+    }
+
+    /** Copies permissions, owner and group of this file to dest; owner and group only where allowed */
+    private void copyMode(Path dest) throws IOException {
+        PosixFileAttributes attributes;
+        PosixFileAttributeView view;
+
+        try {
+            attributes = Files.readAttributes(path, PosixFileAttributes.class);
+        } catch (NoSuchFileException | UnsupportedOperationException e) {
+            return;
+        }
+        view = Files.getFileAttributeView(dest, PosixFileAttributeView.class);
+        // before the permissions: changing owner or group might clear setuid and setgid bits
+        try {
+            view.setOwner(attributes.owner());
+        } catch (FileSystemException e) {
+            // not permitted for other users
+        }
+        try {
+            view.setGroup(attributes.group());
+        } catch (FileSystemException e) {
+            // not permitted for groups the user is not a member of
+        }
+        view.setPermissions(attributes.permissions());
+    }
+
     /**
      * Determines the files size to allocate the resulting array in one chunk. More efficient than the
      * default implementation.
@@ -299,6 +404,60 @@ public class FileNode extends Node<FileNode> {
         return Files.readAllBytes(path);
     }
 
+    /** Maps the file; the mapping stays valid after the channel is closed. Fails for files of 2 GB and above. */
+    @Override
+    public ByteBuffer map() throws IOException {
+        long size;
+
+        try (FileChannel channel = openChannel()) {
+            size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(this + ": cannot map files of 2 GB and above: " + size);
+            }
+            try {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(this + ": cannot map: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel() throws IOException {
+        return openChannel();
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (isDirectory()) {
+            throw new FileNotFoundException(this, "file not found - this is a directory");
+        }
+        try {
+            return FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(this, e);
+        }
+    }
+
+    /** Digests mapped segments of the file instead of copying it through a heap buffer. */
+    @Override
+    public byte[] digestBytes(String name) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest;
+        long size;
+        long step;
+
+        digest = MessageDigest.getInstance(name);
+        try (FileChannel channel = openChannel()) {
+            size = channel.size();
+            for (long position = 0; position < size; position += step) {
+                step = Math.min(size - position, MAP_SEGMENT);
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, step));
+            }
+        }
+        return digest.digest();
+    }
+
+    private static final long MAP_SEGMENT = 64 * 1024 * 1024;
+
     //-- create
 
     /**
@@ -349,6 +508,50 @@ public class FileNode extends Node<FileNode> {
         return Files.isSymbolicLink(path);
     }
 
+    /** Uses a WatchService; changes are reported after delay milliseconds without further events. */
+    @Override
+    public Watch<FileNode> watch(long delay, Consumer<List<FileNode>> callback) throws IOException {
+        checkDirectory();
+        return new FileWatch(this, delay, callback);
+    }
+
+    /** Single stat call, plus one for the target of links. */
+    @Override
+    public Attributes getAttributes() throws IOException {
+        PosixFileAttributes own;
+        BasicFileAttributes target;
+        boolean link;
+
+        try {
+            own = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (UnsupportedOperationException e) {
+            // not a posix file system
+            return super.getAttributes();
+        } catch (NoSuchFileException e) {
+            return Attributes.NOT_FOUND;
+        } catch (IOException e) {
+            throw new ExistsException(this, e);
+        }
+        link = own.isSymbolicLink();
+        target = own;
+        if (link) {
+            try {
+                target = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                // dangling link
+                target = null;
+            } catch (IOException e) {
+                throw new ExistsException(this, e);
+            }
+        }
+        if (target == null) {
+            return new Attributes(true, true, false, false, 0, own.lastModifiedTime().toMillis(),
+                    PosixFilePermissions.toString(own.permissions()), own.owner(), own.group());
+        }
+        return new Attributes(true, link, target.isRegularFile(), target.isDirectory(), target.isRegularFile() ? target.size() : 0,
+                target.lastModifiedTime().toMillis(), PosixFilePermissions.toString(own.permissions()), own.owner(), own.group());
+    }
+
     //-- move
 
     /**
@@ -432,6 +635,60 @@ public class FileNode extends Node<FileNode> {
         return this;
     }
 
+    /** Deletes files in place and forks a task per subdirectory, running on a pool with the specified parallelism. */
+    @Override
+    public FileNode deleteTree(int parallelism) throws DeleteException, NodeNotFoundException {
+        ForkJoinPool pool;
+
+        if (parallelism < 2) {
+            return deleteTree();
+        }
+        if (!exists()) {
+            throw new NodeNotFoundException(this);
+        }
+        pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new DeleteTask(path));
+        } catch (UncheckedIOException e) {
+            throw new DeleteException(this, e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return this;
+    }
+
+    private static class DeleteTask extends RecursiveAction {
+        private final Path path;
+
+        DeleteTask(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        protected void compute() {
+            List<DeleteTask> subdirectories;
+
+            subdirectories = new ArrayList<>();
+            try {
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                        for (Path child : stream) {
+                            if (Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory()) {
+                                subdirectories.add(new DeleteTask(child));
+                            } else {
+                                Files.delete(child);
+                            }
+                        }
+                    }
+                    invokeAll(subdirectories);
+                }
+                Files.delete(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
     protected static void doDeleteTree(Path path) throws IOException {
         if (!Files.isSymbolicLink(path)) {
             if (Files.isDirectory(path)) {
@@ -449,14 +706,23 @@ public class FileNode extends Node<FileNode> {
 
     @Override
     public boolean diff(Node right, Buffer rightBuffer) throws IOException {
+        long size;
+
         if (right instanceof FileNode) {
-            if (size() != right.size()) {
+            size = size();
+            if (size != right.size()) {
                 return true;
             }
+            if (size >= DIFF_MAP_THRESHOLD && size <= Integer.MAX_VALUE) {
+                // compare mappings, without copying into buffers; smaller files are cheaper to read than to map
+                return right.map().mismatch(map()) != -1;
+            }
         }
         return super.diff(right, rightBuffer);
     }
 
+    private static final long DIFF_MAP_THRESHOLD = 1024 * 1024;
+
     //--
 
     /**
@@ -0,0 +1,266 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.file;
+
+import net.oneandone.sushi.fs.Watch;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Registers every directory of the tree with a WatchService. Event paths are collected until there's no event for
+ * delay milliseconds - or MAX_DELAYS times delay after the first pending event at most - then compared against the last
+ * known size and modification time. An overflow triggers a rescan of the whole tree.
+ */
+class FileWatch extends Watch<FileNode> {
+    /** bounds the latency if events keep arriving */
+    private static final int MAX_DELAYS = 10;
+
+    private final WatchService service;
+    /** accessed by the watch thread only, once started */
+    private final Map<WatchKey, Path> keys;
+    private final Set<Path> registered;
+    private Map<Path, Stamp> stamps;
+
+    FileWatch(FileNode root, long delay, Consumer<List<FileNode>> callback) throws IOException {
+        super(root, delay, callback);
+        this.service = root.toPath().getFileSystem().newWatchService();
+        this.keys = new HashMap<>();
+        this.registered = new HashSet<>();
+        try {
+            this.stamps = scan(root.toPath());
+        } catch (IOException e) {
+            service.close();
+            throw e;
+        }
+        start();
+    }
+
+    @Override
+    protected void loop() throws IOException, InterruptedException {
+        Set<Path> pending;
+        boolean overflow;
+        long first;
+        long deadline;
+        long wait;
+        long now;
+        WatchKey key;
+        Path directory;
+
+        pending = new LinkedHashSet<>();
+        overflow = false;
+        first = 0;
+        deadline = 0;
+        try {
+            while (true) {
+                if (pending.isEmpty() && !overflow) {
+                    key = service.take();
+                } else {
+                    wait = deadline - System.currentTimeMillis();
+                    key = wait > 0 ? service.poll(wait, TimeUnit.MILLISECONDS) : null;
+                }
+                if (key == null) {
+                    deliver(overflow ? rescan() : update(pending));
+                    pending.clear();
+                    overflow = false;
+                    continue;
+                }
+                now = System.currentTimeMillis();
+                if (pending.isEmpty() && !overflow) {
+                    first = now;
+                }
+                directory = keys.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                        overflow = true;
+                    } else {
+                        pending.add(directory.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    // directory is gone
+                    keys.remove(key);
+                    registered.remove(directory);
+                }
+                deadline = Math.min(now + delay, first + MAX_DELAYS * delay);
+            }
+        } catch (ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    /** @return changed nodes for the specified paths, including the contents of new or deleted directories */
+    private List<FileNode> update(Set<Path> paths) throws IOException {
+        List<FileNode> result;
+        Stamp old;
+        Stamp now;
+        Iterator<Map.Entry<Path, Stamp>> iter;
+        Map.Entry<Path, Stamp> entry;
+
+        result = new ArrayList<>();
+        for (Path path : paths) {
+            old = stamps.get(path);
+            now = Stamp.forPath(path);
+            if (now == null) {
+                registered.removeIf(dir -> dir.startsWith(path));
+                if (stamps.remove(path) != null) {
+                    result.add(node(path));
+                    iter = stamps.entrySet().iterator();
+                    while (iter.hasNext()) {
+                        entry = iter.next();
+                        if (entry.getKey().startsWith(path)) {
+                            iter.remove();
+                            result.add(node(entry.getKey()));
+                        }
+                    }
+                }
+            } else if (now.directory && !registered.contains(path)) {
+                // contents created before the directory was registered would be missed otherwise
+                for (Map.Entry<Path, Stamp> added : scan(path).entrySet()) {
+                    stamps.put(added.getKey(), added.getValue());
+                    result.add(node(added.getKey()));
+                }
+            } else if (!now.equals(old)) {
+                stamps.put(path, now);
+                result.add(node(path));
+            }
+        }
+        return result;
+    }
+
+    private List<FileNode> rescan() throws IOException {
+        Map<Path, Stamp> current;
+        List<FileNode> result;
+
+        current = scan(root.toPath());
+        current.remove(root.toPath());
+        result = new ArrayList<>();
+        for (Map.Entry<Path, Stamp> entry : current.entrySet()) {
+            if (!entry.getValue().equals(stamps.get(entry.getKey()))) {
+                result.add(node(entry.getKey()));
+            }
+        }
+        for (Path path : stamps.keySet()) {
+            if (!current.containsKey(path)) {
+                result.add(node(path));
+            }
+        }
+        stamps = current;
+        return result;
+    }
+
+    /** Registers all directories not registered yet; does not follow links. @return stamps of everything below dir */
+    private Map<Path, Stamp> scan(Path dir) throws IOException {
+        Map<Path, Stamp> result;
+
+        result = new HashMap<>();
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) throws IOException {
+                if (registered.add(path)) {
+                    keys.put(path.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                            StandardWatchEventKinds.ENTRY_MODIFY), path);
+                }
+                if (!path.equals(root.toPath())) {
+                    result.put(path, new Stamp(attrs));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                result.put(path, new Stamp(attrs));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path path, IOException e) {
+                // removed while scanning - reported by the next event
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return result;
+    }
+
+    private FileNode node(Path path) {
+        return new FileNode(root.getRoot(), path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+        super.close();
+    }
+
+    private static final class Stamp {
+        /** @return null if the path does not exist */
+        public static Stamp forPath(Path path) throws IOException {
+            try {
+                return new Stamp(Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+
+        public final boolean directory;
+        public final long size;
+        public final long modified;
+
+        Stamp(BasicFileAttributes attributes) {
+            this.directory = attributes.isDirectory();
+            this.size = attributes.size();
+            this.modified = attributes.lastModifiedTime().toMillis();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            Stamp stamp;
+
+            if (!(obj instanceof Stamp)) {
+                return false;
+            }
+            stamp = (Stamp) obj;
+            return directory == stamp.directory && size == stamp.size && modified == stamp.modified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(directory, size, modified);
+        }
+    }
+}
@@ -15,15 +15,19 @@
  */
 package net.oneandone.sushi.fs.filter;
 
+import net.oneandone.sushi.fs.Attributes;
 import net.oneandone.sushi.fs.Filesystem;
 import net.oneandone.sushi.fs.Node;
+import net.oneandone.sushi.fs.file.FileNode;
 import net.oneandone.sushi.util.Strings;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 /**
@@ -60,6 +64,9 @@ public class Filter {
 
     private boolean ignoreCase;
     private boolean followLinks;
+    private boolean cacheAttributes;
+    /** null for none */
+    private ScanIndex index;
 
     private int minDepth;
     private int maxDepth;
@@ -72,6 +79,8 @@ public class Filter {
         this.predicates = new ArrayList<>();
         this.ignoreCase = false;
         this.followLinks = false;
+        this.cacheAttributes = false;
+        this.index = null;
         this.minDepth = 1;
         this.maxDepth = DEPTH_INFINITE;
     }
@@ -84,6 +93,8 @@ public class Filter {
         this.predicates = new ArrayList<>(orig.predicates); // TODO: not a deep clone ...
         this.ignoreCase = orig.ignoreCase;
         this.followLinks = orig.followLinks;
+        this.cacheAttributes = orig.cacheAttributes;
+        this.index = orig.index;
         this.minDepth = orig.minDepth;
         this.maxDepth = orig.maxDepth;
     }
@@ -101,6 +112,21 @@ public class Filter {
         return this;
     }
 
+    /** Reads the attributes of every visited node once and passes them to predicates, instead of asking the node per predicate. */
+    public Filter cacheAttributes() {
+        cacheAttributes = true;
+        return this;
+    }
+
+    /**
+     * Walks over FileNodes list only directories that changed since the last walk recorded in index. Only walks that
+     * complete normally are recorded; after a failed walk, the index keeps the previous recording.
+     */
+    public Filter index(ScanIndex scanIndex) {
+        this.index = scanIndex;
+        return this;
+    }
+
     public Filter minDepth(int min) {
         this.minDepth = min;
         return this;
@@ -272,15 +298,63 @@ public class Filter {
      * @throws IOException as thrown by the specified FileTask
      */
     public void invoke(Node root, Action result) throws IOException {
-        doInvoke(0, root, root.isLink(), new ArrayList<>(includes), new ArrayList<>(excludes), result);
+        ScanIndex.Walk walk;
+        Map<String, Attributes> listed;
+
+        if (index != null && root instanceof FileNode) {
+            walk = index.begin((FileNode) root);
+            doInvoke(0, root, root.isLink(), new ArrayList<>(includes), new ArrayList<>(excludes), result, null, null, walk);
+            // not reached for failed walks - they might have skipped directories
+            walk.end();
+        } else {
+            listed = new HashMap<>();
+            doInvoke(0, root, root.isLink(), new ArrayList<>(includes), new ArrayList<>(excludes), result,
+                    listTree(root, listed), listed, null);
+        }
+    }
+
+    /**
+     * Walks that visit the whole tree get all listings in bulk if the filesystem supports this.
+     *
+     * @param listed receives attribute snapshots of the listed nodes; they are valid for this walk only
+     * @return null to list every directory on its own
+     */
+    private Map<String, ? extends List<? extends Node>> listTree(Node<?> root, Map<String, Attributes> listed) {
+        boolean all;
+
+        if (maxDepth != DEPTH_INFINITE) {
+            return null;
+        }
+        all = false;
+        for (Object[] include : includes) {
+            if (include[0] == Glob.STARSTAR) {
+                all = true;
+                break;
+            }
+        }
+        if (!all) {
+            return null;
+        }
+        try {
+            return root.listTree(maxDepth, listed);
+        } catch (IOException e) {
+            // walk directory by directory to report the problem where it occurs
+            return null;
+        }
     }
 
-    private void doInvoke(int currentDepth, Node parent, boolean parentIsLink, List<Object[]> theIncludes, List<Object[]> theExcludes, Action result)
-    throws IOException {
+    /**
+     * @param tree bulk listings, null if not available
+     * @param listed attribute snapshots from the bulk listing, null if not available
+     * @param walk null if not indexed
+     */
+    private void doInvoke(int currentDepth, Node parent, boolean parentIsLink, List<Object[]> theIncludes, List<Object[]> theExcludes, Action result,
+                          Map<String, ? extends List<? extends Node>> tree, Map<String, Attributes> listed, ScanIndex.Walk walk) throws IOException {
         List<? extends Node> children;
         List<Object[]> remainingIncludes;
         List<Object[]> remainingExcludes;
         String name;
+        Attributes attributes;
         boolean childIsLink;
         boolean in;
         boolean ex;
@@ -292,7 +366,7 @@ public class Filter {
             return;
         }
         try {
-            children = list(parent, theIncludes);
+            children = walk != null ? walk.list((FileNode) parent) : list(parent, theIncludes, tree);
         } catch (IOException e) {
             result.enterFailed(parent, parentIsLink, e);
             return;
@@ -304,16 +378,26 @@ public class Filter {
             currentDepth++;
             for (Node child : children) {
                 name = child.getName();
-                childIsLink = child.isLink();
+                attributes = listed != null ? listed.get(child.getPath()) : null;
+                if (attributes == null && cacheAttributes) {
+                    attributes = child.getAttributes();
+                }
+                if (attributes != null) {
+                    childIsLink = attributes.link;
+                } else if (walk != null) {
+                    childIsLink = walk.isLink((FileNode) child);
+                } else {
+                    childIsLink = child.isLink();
+                }
                 remainingIncludes = new ArrayList<>();
                 remainingExcludes = new ArrayList<>();
                 in = doMatch(name, theIncludes, remainingIncludes);
                 ex = doMatch(name, theExcludes, remainingExcludes);
-                if (in && !ex && currentDepth >= minDepth && matchPredicates(child, childIsLink)) {
+                if (in && !ex && currentDepth >= minDepth && matchPredicates(child, childIsLink, attributes)) {
                     result.select(child, childIsLink);
                 }
                 if (remainingIncludes.size() > 0 && !excludesAll(remainingExcludes)) {
-                    doInvoke(currentDepth, child, childIsLink, remainingIncludes, remainingExcludes, result);
+                    doInvoke(currentDepth, child, childIsLink, remainingIncludes, remainingExcludes, result, tree, listed, walk);
                 }
             }
             result.leave(parent, parentIsLink);
@@ -321,9 +405,24 @@ public class Filter {
     }
 
     // avoids node.list() call if there is exactly 1 include with a literal head
-    private List<? extends Node> list(Node<?> node, List<Object[]> theIncludes) throws IOException {
+    private List<? extends Node> list(Node<?> node, List<Object[]> theIncludes, Map<String, ? extends List<? extends Node>> tree) throws IOException {
         Node child;
+        List<? extends Node> children;
 
+        if (tree != null && tree.containsKey(node.getPath())) {
+            children = tree.get(node.getPath());
+            if (theIncludes.size() == 1 && theIncludes.get(0)[0] instanceof String) {
+                if (children != null) {
+                    for (Node candidate : children) {
+                        if (candidate.getName().equals(theIncludes.get(0)[0])) {
+                            return Collections.singletonList(candidate);
+                        }
+                    }
+                }
+                return Collections.emptyList();
+            }
+            return children;
+        }
         if (theIncludes.size() == 1 && theIncludes.get(0)[0] instanceof String) {
             child = node.join((String) theIncludes.get(0)[0]);
             if (child.exists()) {
@@ -336,9 +435,10 @@ public class Filter {
         }
     }
 
-    private boolean matchPredicates(Node node, boolean isLink) throws IOException {
+    /** @param attributes null if not cached */
+    private boolean matchPredicates(Node node, boolean isLink, Attributes attributes) throws IOException {
         for (Predicate p : predicates) {
-            if (!p.matches(node, isLink)) {
+            if (attributes != null ? !p.matches(node, attributes) : !p.matches(node, isLink)) {
                 return false;
             }
         }
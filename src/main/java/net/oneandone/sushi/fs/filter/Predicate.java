@@ -15,18 +15,44 @@
  */
 package net.oneandone.sushi.fs.filter;
 
+import net.oneandone.sushi.fs.Attributes;
 import net.oneandone.sushi.fs.Node;
 
 import java.io.IOException;
 
 public interface Predicate {
-    Predicate FILE = (node, isLink) -> node.isFile();
+    Predicate FILE = new Predicate() {
+        @Override
+        public boolean matches(Node node, boolean isLink) throws IOException {
+            return node.isFile();
+        }
 
-    Predicate DIRECTORY = (node, isLink) -> node.isDirectory();
+        @Override
+        public boolean matches(Node node, Attributes attributes) {
+            return attributes.file;
+        }
+    };
+
+    Predicate DIRECTORY = new Predicate() {
+        @Override
+        public boolean matches(Node node, boolean isLink) throws IOException {
+            return node.isDirectory();
+        }
+
+        @Override
+        public boolean matches(Node node, Attributes attributes) {
+            return attributes.directory;
+        }
+    };
 
     Predicate LINK = (node, isLink) -> isLink;
 
     Predicate NON_LINK = (node, isLink) -> !isLink;
 
     boolean matches(Node node, boolean isLink) throws IOException;
+
+    /** Invoked instead of matches(node, isLink) if the filter caches attributes; override to avoid asking the node again. */
+    default boolean matches(Node node, Attributes attributes) throws IOException {
+        return matches(node, attributes.link);
+    }
 }
@@ -0,0 +1,273 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.filter;
+
+import net.oneandone.sushi.fs.DirectoryNotFoundException;
+import net.oneandone.sushi.fs.ListException;
+import net.oneandone.sushi.fs.file.FileNode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent directory listings for repeated Filter walks over FileNode trees, see Filter.index. For every listed
+ * directory, the index stores its modification time and entries; the next walk replays entries of directories with
+ * an unchanged modification time and lists the others. One file per walk root, stored in the index directory together
+ * with the start time of the recording walk. Missing, outdated or corrupt files start with an empty index.
+ * Not thread-safe.
+ */
+public class ScanIndex {
+    private static final int VERSION = 2;
+
+    /** modifications within this time before a walk might not change the directory's modification time */
+    private static final long UNSAFE_MILLIS = 2000;
+
+    private static final byte FILE = 0;
+    private static final byte DIRECTORY = 1;
+    private static final byte LINK = 2;
+
+    private final FileNode directory;
+
+    public ScanIndex(FileNode directory) {
+        this.directory = directory;
+    }
+
+    public FileNode getDirectory() {
+        return directory;
+    }
+
+    /** @return index file for the specified root; its first entry is the root path, so hash collisions are detected */
+    private FileNode file(FileNode root) {
+        return directory.join(Integer.toHexString(root.getAbsolute().hashCode()) + ".idx");
+    }
+
+    /** Loads the recorded listings for root */
+    Walk begin(FileNode root) throws IOException {
+        FileNode file;
+        long max;
+        long recordedStart;
+        Map<String, Listing> listings;
+        int count;
+        String path;
+        long modified;
+        String[] names;
+        byte[] types;
+
+        file = file(root);
+        recordedStart = 0;
+        listings = new HashMap<>();
+        if (file.isFile()) {
+            max = file.size();
+            try (InputStream src = file.newInputStream(); DataInputStream data = new DataInputStream(new BufferedInputStream(src))) {
+                if (data.readInt() == VERSION && data.readUTF().equals(root.getAbsolute())) {
+                    recordedStart = data.readLong();
+                    count = length(data, max);
+                    for (int i = 0; i < count; i++) {
+                        path = data.readUTF();
+                        modified = data.readLong();
+                        names = new String[length(data, max)];
+                        types = new byte[names.length];
+                        for (int j = 0; j < names.length; j++) {
+                            names[j] = data.readUTF();
+                            types[j] = data.readByte();
+                        }
+                        listings.put(path, new Listing(modified, names, types));
+                    }
+                }
+            } catch (EOFException | UTFDataFormatException e) {
+                // truncated or corrupt, e.g. by a crash: walk without index
+                recordedStart = 0;
+                listings.clear();
+            }
+        }
+        return new Walk(root, recordedStart, listings);
+    }
+
+    /** @param max file size - every element takes at least one byte */
+    private static int length(DataInputStream data, long max) throws IOException {
+        int result;
+
+        result = data.readInt();
+        if (result < 0 || result > max) {
+            throw new EOFException("corrupt length: " + result);
+        }
+        return result;
+    }
+
+    private static class Listing {
+        public final long modified;
+        public final String[] names;
+        public final byte[] types;
+
+        Listing(long modified, String[] names, byte[] types) {
+            this.modified = modified;
+            this.names = names;
+            this.types = types;
+        }
+    }
+
+    /** State of one Filter walk */
+    class Walk {
+        private final FileNode root;
+        private final long started;
+        /** start time of the walk that recorded the listings */
+        private final long recordedStart;
+        private final Map<String, Listing> recorded;
+        /** listings of this walk */
+        private final Map<String, Listing> current;
+        /** types of children listed in this walk */
+        private final Map<String, Byte> types;
+        private int replayed;
+
+        Walk(FileNode root, long recordedStart, Map<String, Listing> recorded) {
+            this.root = root;
+            this.started = System.currentTimeMillis();
+            this.recordedStart = recordedStart;
+            this.recorded = recorded;
+            this.current = new HashMap<>();
+            this.types = new HashMap<>();
+            this.replayed = 0;
+        }
+
+        /** @return number of directories not listed because their recorded entries could be used */
+        public int getReplayed() {
+            return replayed;
+        }
+
+        /** @return null if node is a file, like Node.list */
+        public List<FileNode> list(FileNode node) throws IOException {
+            String path;
+            Byte type;
+            BasicFileAttributes attributes;
+            long modified;
+            Listing listing;
+            List<FileNode> result;
+
+            path = node.getAbsolute();
+            type = types.get(path);
+            if (type != null && type == FILE) {
+                return null;
+            }
+            try {
+                attributes = Files.readAttributes(node.toPath(), BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                throw new DirectoryNotFoundException(node, e);
+            } catch (IOException e) {
+                throw new ListException(node, e);
+            }
+            if (!attributes.isDirectory()) {
+                return null;
+            }
+            modified = attributes.lastModifiedTime().toMillis();
+            listing = recorded.get(path);
+            // a listing recorded shortly after a modification might miss a later one with the same modification time
+            if (listing != null && listing.modified == modified && modified < recordedStart - UNSAFE_MILLIS) {
+                replayed++;
+            } else {
+                listing = read(node, modified);
+            }
+            current.put(path, listing);
+            result = new ArrayList<>(listing.names.length);
+            for (int i = 0; i < listing.names.length; i++) {
+                result.add(node.join(listing.names[i]));
+                types.put(result.get(i).getAbsolute(), listing.types[i]);
+            }
+            return result;
+        }
+
+        private Listing read(FileNode node, long modified) throws IOException {
+            List<String> names;
+            List<Byte> kinds;
+            BasicFileAttributes attributes;
+            byte[] array;
+
+            names = new ArrayList<>();
+            kinds = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(node.toPath())) {
+                for (Path child : stream) {
+                    try {
+                        attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (NoSuchFileException e) {
+                        // removed while listing
+                        continue;
+                    }
+                    names.add(child.getFileName().toString());
+                    kinds.add(attributes.isSymbolicLink() ? LINK : attributes.isDirectory() ? DIRECTORY : FILE);
+                }
+            } catch (IOException e) {
+                throw new ListException(node, e);
+            }
+            array = new byte[kinds.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = kinds.get(i);
+            }
+            return new Listing(modified, names.toArray(new String[0]), array);
+        }
+
+        /** Only valid for children of directories listed in this walk */
+        public boolean isLink(FileNode child) {
+            Byte type;
+
+            type = types.get(child.getAbsolute());
+            return type != null && type == LINK;
+        }
+
+        /** Stores the listings of this walk; directories not visited by this walk are dropped. */
+        public void end() throws IOException {
+            FileNode file;
+            FileNode tmp;
+            Listing listing;
+
+            directory.mkdirsOpt();
+            file = file(root);
+            tmp = directory.join(file.getName() + ".tmp");
+            try (OutputStream dest = tmp.newOutputStream(); DataOutputStream data = new DataOutputStream(new BufferedOutputStream(dest))) {
+                data.writeInt(VERSION);
+                data.writeUTF(root.getAbsolute());
+                data.writeLong(started);
+                data.writeInt(current.size());
+                for (Map.Entry<String, Listing> entry : current.entrySet()) {
+                    listing = entry.getValue();
+                    data.writeUTF(entry.getKey());
+                    data.writeLong(listing.modified);
+                    data.writeInt(listing.names.length);
+                    for (int i = 0; i < listing.names.length; i++) {
+                        data.writeUTF(listing.names[i]);
+                        data.writeByte(listing.types[i]);
+                    }
+                }
+            }
+            tmp.move(file, true);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.http;
+
+import net.oneandone.sushi.fs.DirectoryNotFoundException;
+import net.oneandone.sushi.fs.ExistsException;
+import net.oneandone.sushi.fs.FileNotFoundException;
+import net.oneandone.sushi.fs.ListException;
+import net.oneandone.sushi.fs.NewInputStreamException;
+import net.oneandone.sushi.fs.SizeException;
+import net.oneandone.sushi.fs.http.io.ContentCoding;
+import net.oneandone.sushi.fs.http.model.Body;
+import net.oneandone.sushi.fs.http.model.Header;
+import net.oneandone.sushi.fs.http.model.HeaderList;
+import net.oneandone.sushi.fs.http.model.Method;
+import net.oneandone.sushi.fs.http.model.MultiStatus;
+import net.oneandone.sushi.fs.http.model.Name;
+import net.oneandone.sushi.fs.http.model.Request;
+import net.oneandone.sushi.fs.http.model.StatusCode;
+import net.oneandone.sushi.fs.http.model.StatusLine;
+import net.oneandone.sushi.xml.Builder;
+import net.oneandone.sushi.xml.Xml;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Non-blocking engine for the asynchronous HttpNode methods, based on java.net.http.HttpClient: requests don't hold a
+ * thread while waiting for the response. Enabled with HttpFilesystem.setAsync. Uses the filesystem's proxy
+ * configuration and timeouts, but not its socket factory selector.
+ */
+public class AsyncHttp {
+    /** headers set by HttpClient itself */
+    private static final Set<String> RESTRICTED = Set.of("connection", "content-length", "date", "expect", "from", "host",
+            "origin", "referer", "upgrade", "via", "warning");
+
+    public static HttpClient createClient(HttpFilesystem filesystem) {
+        HttpClient.Builder builder;
+
+        builder = HttpClient.newBuilder();
+        builder.followRedirects(HttpClient.Redirect.NEVER);
+        builder.proxy(new FilesystemProxySelector(filesystem));
+        if (filesystem.getDefaultConnectionTimeout() > 0) {
+            builder.connectTimeout(Duration.ofMillis(filesystem.getDefaultConnectionTimeout()));
+        }
+        return builder.build();
+    }
+
+    //--
+
+    private final HttpFilesystem filesystem;
+    private final HttpClient client;
+
+    public AsyncHttp(HttpFilesystem filesystem) {
+        this(filesystem, createClient(filesystem));
+    }
+
+    public AsyncHttp(HttpFilesystem filesystem, HttpClient client) {
+        this.filesystem = filesystem;
+        this.client = client;
+    }
+
+    public HttpClient getClient() {
+        return client;
+    }
+
+    public CompletableFuture<Boolean> exists(HttpNode node) {
+        return wrap(send(node, "HEAD", node.getRequestPath(), null).thenApply(io(response -> {
+            switch (response.statusCode()) {
+                case StatusCode.OK:
+                case StatusCode.MOVED_PERMANENTLY:
+                    return true;
+                case StatusCode.NOT_FOUND:
+                    return false;
+                default:
+                    throw statusException(node, response);
+            }
+        })), e -> new ExistsException(node, e));
+    }
+
+    public CompletableFuture<Long> size(HttpNode node) {
+        CompletableFuture<Long> result;
+
+        if (Boolean.FALSE.equals(node.getDav())) {
+            result = headSize(node);
+        } else {
+            result = propfind(node, false, Name.GETCONTENTLENGTH, 0).thenCompose(io(response -> {
+                switch (response.statusCode()) {
+                    case StatusCode.MULTI_STATUS:
+                        node.setDav(true);
+                        return CompletableFuture.completedFuture(
+                                parseSize((String) MultiStatus.lookupOne(multistatus(response), Name.GETCONTENTLENGTH).property.getValue()));
+                    case StatusCode.METHOD_NOT_ALLOWED:
+                        node.setDav(false);
+                        return headSize(node);
+                    case StatusCode.NOT_FOUND:
+                        return headSize(node);
+                    default:
+                        throw statusException(node, response);
+                }
+            }));
+        }
+        return wrap(result, e -> new SizeException(node, e));
+    }
+
+    private CompletableFuture<Long> headSize(HttpNode node) {
+        return send(node, "HEAD", node.getRequestPath(false), null).thenApply(io(response -> {
+            if (response.statusCode() != StatusCode.OK) {
+                throw statusException(node, response);
+            }
+            return parseSize(response.headers().firstValue(Header.CONTENT_LENGTH).orElseThrow(
+                    () -> new CompletionException(new IOException("head request did not return content length"))));
+        }));
+    }
+
+    private static long parseSize(String str) throws IOException {
+        try {
+            return Long.parseLong(str);
+        } catch (NumberFormatException e) {
+            throw new IOException("invalid size: " + str, e);
+        }
+    }
+
+    public CompletableFuture<byte[]> readBytes(HttpNode node) {
+        return wrap(send(node, "GET", node.getRequestPath(false), null).thenApply(io(response -> {
+            if (response.statusCode() == StatusCode.OK) {
+                return decode(response);
+            }
+            throw node.newInputStreamException(statusException(node, response));
+        })), e -> e instanceof FileNotFoundException || e instanceof NewInputStreamException ? e : new NewInputStreamException(node, e));
+    }
+
+    /** @return null if node is a file */
+    public CompletableFuture<List<HttpNode>> list(HttpNode node) {
+        return wrap(propfind(node, true, Name.DISPLAYNAME, 1).thenApply(io(response -> {
+            List<HttpNode> result;
+            URI href;
+
+            switch (response.statusCode()) {
+                case StatusCode.MULTI_STATUS:
+                    result = new ArrayList<>();
+                    for (MultiStatus ms : multistatus(response)) {
+                        try {
+                            href = new URI(ms.href);
+                        } catch (URISyntaxException e) {
+                            throw new IOException(e.getMessage(), e);
+                        }
+                        if (!node.samePath(href)) {
+                            result.add(node.createChild(href));
+                        }
+                    }
+                    return result;
+                case StatusCode.BAD_REQUEST:
+                case StatusCode.MOVED_PERMANENTLY:
+                    return null; // this is a file
+                case StatusCode.NOT_FOUND:
+                    throw new DirectoryNotFoundException(node);
+                default:
+                    throw statusException(node, response);
+            }
+        })), e -> e instanceof DirectoryNotFoundException ? e : new ListException(node, e));
+    }
+
+    public CompletableFuture<Void> put(HttpNode node, byte[] bytes) {
+        return send(node, "PUT", node.getRequestPath(false), bytes).thenApply(io(response -> {
+            switch (response.statusCode()) {
+                case StatusCode.OK:
+                case StatusCode.CREATED:
+                case StatusCode.NO_CONTENT:
+                    return null;
+                default:
+                    throw statusException(node, response);
+            }
+        }));
+    }
+
+    //--
+
+    private CompletableFuture<HttpResponse<byte[]>> propfind(HttpNode node, boolean dir, Name name, int depth) {
+        Xml xml;
+        Document document;
+        Request request;
+
+        xml = node.getWorld().getXml();
+        document = xml.getBuilder().createDocument("propfind", Method.DAV);
+        name.addXml(Builder.element(document.getDocumentElement(), Method.XML_PROP, Method.DAV));
+        request = new Request(node.getRoot(), node.allHeaders(), "PROPFIND", node.getRequestPath(dir));
+        request.addRequestHeader("Depth", String.valueOf(depth));
+        return send(node, request, readBytes(Body.forDom(xml.getSerializer(), document)));
+    }
+
+    private static byte[] readBytes(Body body) {
+        try {
+            return body.content.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // because forDom bodies are in memory
+        }
+    }
+
+    private List<MultiStatus> multistatus(HttpResponse<byte[]> response) throws IOException {
+        return MultiStatus.fromResponse(new ByteArrayInputStream(decode(response)));
+    }
+
+    private CompletableFuture<HttpResponse<byte[]>> send(HttpNode node, String method, String path, byte[] body) {
+        return send(node, new Request(node.getRoot(), node.allHeaders(), method, path), body);
+    }
+
+    private CompletableFuture<HttpResponse<byte[]>> send(HttpNode node, Request request, byte[] body) {
+        HttpRoot root;
+        HttpRequest.Builder builder;
+
+        root = node.getRoot();
+        if (!"HEAD".equals(request.getMethod())) {
+            request.acceptEncoding();
+        }
+        if (body != null && !"PROPFIND".equals(request.getMethod()) && filesystem.getCompressRequests()) {
+            body = filesystem.getContentCoding().encode(body);
+            request.addRequestHeader(Header.CONTENT_ENCODING, ContentCoding.GZIP);
+        }
+        request.bodyHeader(null);
+        try {
+            builder = HttpRequest.newBuilder(new URI(root.getProtocol() + "://" + root.getHostname() + ":" + root.getPort() + request.getUri()));
+        } catch (URISyntaxException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        builder.method(request.getMethod(), body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body));
+        if (root.getSoTimeout() > 0) {
+            builder.timeout(Duration.ofMillis(root.getSoTimeout()));
+        }
+        for (Header header : request.getHeaderList()) {
+            if (!RESTRICTED.contains(header.name.toLowerCase())) {
+                builder.header(header.name, header.value);
+            }
+        }
+        return client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /** @return response body, decoded if necessary */
+    private byte[] decode(HttpResponse<byte[]> response) throws IOException {
+        String coding;
+        InputStream decoded;
+
+        coding = response.headers().firstValue(Header.CONTENT_ENCODING).orElse(null);
+        if (coding == null || !filesystem.getAcceptEncoding()) {
+            return response.body();
+        }
+        decoded = filesystem.getContentCoding().decode(coding, new ByteArrayInputStream(response.body()));
+        if (decoded == null) {
+            return response.body();
+        }
+        try (InputStream src = decoded) {
+            return src.readAllBytes();
+        }
+    }
+
+    private static StatusException statusException(HttpNode node, HttpResponse<byte[]> response) {
+        HeaderList list;
+
+        list = new HeaderList();
+        for (Map.Entry<String, List<String>> entry : response.headers().map().entrySet()) {
+            for (String value : entry.getValue()) {
+                list.add(entry.getKey(), value);
+            }
+        }
+        return new StatusException(node, list, new StatusLine(StatusLine.HTTP_1_1, response.statusCode()), response.body());
+    }
+
+    //--
+
+    private interface IOFunction<T, R> {
+        R apply(T t) throws IOException;
+    }
+
+    private static <T, R> Function<T, R> io(IOFunction<T, R> function) {
+        return t -> {
+            try {
+                return function.apply(t);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
+
+    /** Maps IOExceptions to node exceptions; other exceptions are passed unchanged. */
+    private static <T> CompletableFuture<T> wrap(CompletableFuture<T> future, Function<IOException, IOException> mapper) {
+        CompletableFuture<T> result;
+
+        result = new CompletableFuture<>();
+        future.whenComplete((value, e) -> {
+            if (e == null) {
+                result.complete(value);
+            } else {
+                if (e instanceof CompletionException && e.getCause() != null) {
+                    e = e.getCause();
+                }
+                result.completeExceptionally(e instanceof IOException ? mapper.apply((IOException) e) : e);
+            }
+        });
+        return result;
+    }
+
+    private static class FilesystemProxySelector extends ProxySelector {
+        private final HttpFilesystem filesystem;
+
+        FilesystemProxySelector(HttpFilesystem filesystem) {
+            this.filesystem = filesystem;
+        }
+
+        @Override
+        public List<java.net.Proxy> select(URI uri) {
+            URI proxy;
+
+            proxy = filesystem.proxy(uri);
+            if (proxy == null) {
+                return Collections.singletonList(java.net.Proxy.NO_PROXY);
+            }
+            return Collections.singletonList(new java.net.Proxy(java.net.Proxy.Type.HTTP, InetSocketAddress.createUnresolved(proxy.getHost(), proxy.getPort())));
+        }
+
+        @Override
+        public void connectFailed(URI uri, SocketAddress sa, IOException e) {
+            // nothing to do
+        }
+    }
+}
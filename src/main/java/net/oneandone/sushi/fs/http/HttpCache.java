@@ -0,0 +1,440 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.http;
+
+import net.oneandone.sushi.fs.file.FileNode;
+import net.oneandone.sushi.fs.http.model.Body;
+import net.oneandone.sushi.fs.http.model.HeaderList;
+import net.oneandone.sushi.fs.http.model.Request;
+import net.oneandone.sushi.fs.http.model.Response;
+import net.oneandone.sushi.fs.http.model.StatusCode;
+import net.oneandone.sushi.util.Separator;
+import net.oneandone.sushi.util.Strings;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side cache for GET responses, enabled with HttpFilesystem.setCache. Responses are stored in memory (LRU, limited
+ * by the total number of bytes) and - if a directory is configured - on disk. A stored response is served without any
+ * request while it's fresh according to Cache-Control max-age; otherwise it's revalidated with If-None-Match and
+ * If-Modified-Since, and a 304 answer is served from the local copy. Responses with Cache-Control no-store, and responses
+ * without validator and max-age are not stored. Entries are keyed by uri, request headers are not considered.
+ */
+public class HttpCache {
+    public static final String IF_NONE_MATCH = "If-None-Match";
+    public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+    public static final String ETAG = "ETag";
+    public static final String LAST_MODIFIED = "Last-Modified";
+    public static final String CACHE_CONTROL = "Cache-Control";
+
+    private final long memoryBytes;
+    /** may be null */
+    private final FileNode directory;
+
+    /** guarded by this */
+    private final LinkedHashMap<String, Entry> memory;
+    /** guarded by this */
+    private long memoryUsed;
+
+    private final AtomicLong hits;
+    private final AtomicLong revalidated;
+    private final AtomicLong misses;
+
+    /** Memory-only cache */
+    public HttpCache(long memoryBytes) {
+        this(memoryBytes, null);
+    }
+
+    /**
+     * @param memoryBytes maximum number of bytes kept in memory; entries larger than a quarter of it are kept on disk only
+     * @param directory to store entries on disk; null for memory only
+     */
+    public HttpCache(long memoryBytes, FileNode directory) {
+        this.memoryBytes = memoryBytes;
+        this.directory = directory;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true);
+        this.memoryUsed = 0;
+        this.hits = new AtomicLong();
+        this.revalidated = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    public FileNode getDirectory() {
+        return directory;
+    }
+
+    /** @return number of reads served without request */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** @return number of reads served from the local copy after a 304 response */
+    public long getRevalidated() {
+        return revalidated.get();
+    }
+
+    /** @return number of reads that transferred the content */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    public void clear() throws IOException {
+        synchronized (this) {
+            memory.clear();
+            memoryUsed = 0;
+        }
+        if (directory != null && directory.isDirectory()) {
+            for (FileNode file : directory.list()) {
+                file.deleteTree();
+            }
+        }
+    }
+
+    //--
+
+    /** Get with this cache; throws StatusException for all status codes except 200 and 304 */
+    public InputStream get(HttpNode node) throws IOException {
+        String key;
+        Entry entry;
+        long now;
+        Request request;
+        Response response;
+        Control control;
+
+        key = node.getUri().toString();
+        entry = lookup(key);
+        now = System.currentTimeMillis();
+        if (entry != null && now < entry.expires) {
+            hits.incrementAndGet();
+            return entry.open();
+        }
+        request = new Request("GET", node);
+        request.acceptEncoding();
+        if (entry != null) {
+            if (entry.etag != null) {
+                request.addRequestHeader(IF_NONE_MATCH, entry.etag);
+            }
+            if (entry.lastModified != null) {
+                request.addRequestHeader(IF_MODIFIED_SINCE, entry.lastModified);
+            }
+        }
+        request.bodyHeader(null);
+        response = request.responseHeader(request.open(null));
+        control = new Control(response.getHeaderList());
+        switch (response.getStatusLine().code) {
+            case StatusCode.NOT_MODIFIED:
+                request.free(response);
+                if (entry == null) {
+                    throw StatusException.forResponse(node, response);
+                }
+                revalidated.incrementAndGet();
+                if (!control.noStore) {
+                    entry = entry.refresh(response.getHeaderList(), control.expires(now));
+                    put(key, entry);
+                }
+                return entry.open();
+            case StatusCode.OK:
+                misses.incrementAndGet();
+                if (!control.storable(response.getHeaderList()) || (directory == null && !fitsMemory(response.getBody()))) {
+                    remove(key);
+                    return new Request.ResponseStream(request, response);
+                }
+                try {
+                    entry = create(key, response, control.expires(now));
+                } finally {
+                    request.free(response);
+                }
+                put(key, entry);
+                return entry.open();
+            default:
+                request.free(response);
+                throw StatusException.forResponse(node, response);
+        }
+    }
+
+    //--
+
+    private Entry lookup(String key) throws IOException {
+        Entry entry;
+
+        synchronized (this) {
+            entry = memory.get(key);
+        }
+        if (entry == null && directory != null) {
+            entry = load(key);
+            if (entry != null) {
+                remember(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    private Entry create(String key, Response response, long expires) throws IOException {
+        Body body;
+        HeaderList headers;
+        byte[] data;
+        FileNode file;
+        FileNode tmp;
+
+        body = response.getBody();
+        headers = response.getHeaderList();
+        if (fitsMemory(body)) {
+            data = response.connection.getBuffer().readBytes(body.content);
+            file = null;
+        } else {
+            data = null;
+            file = file(key, ".data");
+            directory.mkdirsOpt();
+            tmp = directory.createTempFile();
+            try {
+                try (OutputStream dest = tmp.newOutputStream()) {
+                    response.connection.getBuffer().copy(body.content, dest);
+                }
+                tmp.move(file, true);
+            } catch (IOException e) {
+                try {
+                    tmp.deleteFileOpt();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+        return new Entry(headers.getFirstValue(ETAG), headers.getFirstValue(LAST_MODIFIED), expires, data, file);
+    }
+
+    private void put(String key, Entry entry) throws IOException {
+        FileNode file;
+
+        if (directory != null) {
+            if (entry.file == null) {
+                file = file(key, ".data");
+                directory.mkdirsOpt();
+                write(file, entry.data);
+                entry = new Entry(entry.etag, entry.lastModified, entry.expires, entry.data, file);
+            }
+            write(file(key, ".properties"), entry.properties(key));
+        }
+        remember(key, entry);
+    }
+
+    private void remove(String key) throws IOException {
+        synchronized (this) {
+            forget(memory.remove(key));
+        }
+        if (directory != null) {
+            file(key, ".properties").deleteFileOpt();
+            file(key, ".data").deleteFileOpt();
+        }
+    }
+
+    private void write(FileNode dest, byte[] data) throws IOException {
+        FileNode tmp;
+
+        tmp = directory.createTempFile();
+        tmp.writeBytes(data);
+        tmp.move(dest, true);
+    }
+
+    private void write(FileNode dest, Properties properties) throws IOException {
+        FileNode tmp;
+
+        tmp = directory.createTempFile();
+        tmp.writeProperties(properties);
+        tmp.move(dest, true);
+    }
+
+    private Entry load(String key) throws IOException {
+        FileNode meta;
+        FileNode file;
+        Properties p;
+        byte[] data;
+
+        meta = file(key, ".properties");
+        file = file(key, ".data");
+        if (!meta.isFile() || !file.isFile()) {
+            return null;
+        }
+        p = meta.readProperties();
+        if (!key.equals(p.getProperty("uri"))) {
+            return null;
+        }
+        data = file.size() <= maxMemoryEntry() ? file.readBytes() : null;
+        return new Entry(p.getProperty("etag"), p.getProperty("lastModified"), Long.parseLong(p.getProperty("expires")), data, file);
+    }
+
+    private synchronized void remember(String key, Entry entry) {
+        Iterator<Entry> iter;
+
+        forget(memory.put(key, entry));
+        memoryUsed += entry.memory();
+        iter = memory.values().iterator();
+        while (memoryUsed > memoryBytes && iter.hasNext()) {
+            entry = iter.next();
+            if (entry.memory() == 0) {
+                continue;
+            }
+            iter.remove();
+            forget(entry);
+        }
+    }
+
+    private void forget(Entry entry) {
+        if (entry != null) {
+            memoryUsed -= entry.memory();
+        }
+    }
+
+    /** Bodies with unknown length are never buffered in memory */
+    private boolean fitsMemory(Body body) {
+        return body.length >= 0 && body.length <= maxMemoryEntry();
+    }
+
+    private long maxMemoryEntry() {
+        return memoryBytes / 4;
+    }
+
+    private FileNode file(String key, String extension) {
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return directory.join(Strings.toHex(digest.digest(key.getBytes(StandardCharsets.UTF_8))) + extension);
+    }
+
+    /** immutable */
+    private static class Entry {
+        /** may be null */
+        public final String etag;
+        /** may be null */
+        public final String lastModified;
+        public final long expires;
+        /** null if on disk only */
+        public final byte[] data;
+        /** null if in memory only */
+        public final FileNode file;
+
+        Entry(String etag, String lastModified, long expires, byte[] data, FileNode file) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expires = expires;
+            this.data = data;
+            this.file = file;
+        }
+
+        public long memory() {
+            return data == null ? 0 : data.length;
+        }
+
+        public InputStream open() throws IOException {
+            return data != null ? new ByteArrayInputStream(data) : file.newInputStream();
+        }
+
+        /** a 304 response may update validators */
+        public Entry refresh(HeaderList headers, long newExpires) {
+            String newEtag;
+            String newLastModified;
+
+            newEtag = headers.getFirstValue(ETAG);
+            newLastModified = headers.getFirstValue(LAST_MODIFIED);
+            return new Entry(newEtag != null ? newEtag : etag, newLastModified != null ? newLastModified : lastModified,
+                    newExpires, data, file);
+        }
+
+        public Properties properties(String key) {
+            Properties result;
+
+            result = new Properties();
+            result.setProperty("uri", key);
+            if (etag != null) {
+                result.setProperty("etag", etag);
+            }
+            if (lastModified != null) {
+                result.setProperty("lastModified", lastModified);
+            }
+            result.setProperty("expires", Long.toString(expires));
+            return result;
+        }
+    }
+
+    /** The Cache-Control directives relevant for this cache */
+    private static class Control {
+        public final boolean noStore;
+        public final boolean noCache;
+        /** seconds, -1 if not specified */
+        public final long maxAge;
+
+        Control(HeaderList headers) {
+            String value;
+            boolean store;
+            boolean cache;
+            long age;
+
+            value = headers.getFirstValue(CACHE_CONTROL);
+            store = false;
+            cache = false;
+            age = -1;
+            if (value != null) {
+                for (String directive : Separator.COMMA.split(value)) {
+                    directive = directive.toLowerCase();
+                    if (directive.equals("no-store")) {
+                        store = true;
+                    } else if (directive.equals("no-cache")) {
+                        cache = true;
+                    } else if (directive.startsWith("max-age=")) {
+                        try {
+                            age = Long.parseLong(Strings.removeLeft(directive, "max-age=").replace("\"", ""));
+                        } catch (NumberFormatException e) {
+                            age = 0;
+                        }
+                    }
+                }
+            }
+            this.noStore = store;
+            this.noCache = cache;
+            this.maxAge = age;
+        }
+
+        public boolean storable(HeaderList headers) {
+            if (noStore) {
+                return false;
+            }
+            return maxAge > 0 || headers.getFirst(ETAG) != null || headers.getFirst(LAST_MODIFIED) != null;
+        }
+
+        /** @return time until the response is fresh */
+        public long expires(long now) {
+            return noCache || maxAge <= 0 ? 0 : now + maxAge * 1000;
+        }
+    }
+}
@@ -34,19 +34,29 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
 
 public class HttpConnection implements Closeable {
     private final Socket socket;
     private final AsciiInputStream input;
     private final AsciiOutputStream output;
+    /** null if bytes cannot be written to the socket directly */
+    private final SocketChannel channel;
     private final byte[] bufferBytes;
     private final Buffer buffer;
     private boolean open;
 
     public HttpConnection(Socket socket, AsciiInputStream input, AsciiOutputStream output) {
+        this(socket, input, output, null);
+    }
+
+    public HttpConnection(Socket socket, AsciiInputStream input, AsciiOutputStream output, SocketChannel channel) {
         this.socket = socket;
         this.input = input;
         this.output = output;
+        this.channel = channel;
         this.open = true;
         this.bufferBytes = new byte[4096];
         this.buffer = new Buffer(bufferBytes);
@@ -75,6 +85,38 @@ public class HttpConnection implements Closeable {
         output.flush();
     }
 
+    /** Sends length bytes from src starting at position as request body, without copying them if a channel is available. */
+    public void transferFrom(FileChannel src, long position, long length) throws IOException {
+        long done;
+        long count;
+        ByteBuffer bytes;
+
+        output.flush();
+        done = 0;
+        if (channel != null) {
+            while (done < length) {
+                count = src.transferTo(position + done, length - done, channel);
+                if (count <= 0) {
+                    throw new IOException("unexpected end of file: " + done + " of " + length + " bytes transferred");
+                }
+                done += count;
+            }
+        } else {
+            bytes = ByteBuffer.wrap(bufferBytes);
+            while (done < length) {
+                bytes.clear();
+                bytes.limit((int) Math.min(bytes.capacity(), length - done));
+                count = src.read(bytes, position + done);
+                if (count <= 0) {
+                    throw new IOException("unexpected end of file: " + done + " of " + length + " bytes transferred");
+                }
+                output.write(bufferBytes, 0, (int) count);
+                done += count;
+            }
+            output.flush();
+        }
+    }
+
     public Response receiveResponseHeader() throws IOException {
         return Response.parse(this, input);
     }
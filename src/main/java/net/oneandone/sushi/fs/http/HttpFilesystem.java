@@ -19,6 +19,7 @@ import net.oneandone.sushi.fs.Features;
 import net.oneandone.sushi.fs.Filesystem;
 import net.oneandone.sushi.fs.NodeInstantiationException;
 import net.oneandone.sushi.fs.World;
+import net.oneandone.sushi.fs.http.io.ContentCoding;
 import net.oneandone.sushi.util.NetRc;
 
 import javax.net.SocketFactory;
@@ -75,6 +76,14 @@ public class HttpFilesystem extends Filesystem {
     private Boolean defaultDav;
     private BiFunction<String, String, SocketFactory> socketFactorySelector;
     private final Map<String, Proxy> proxies;
+    /** null for no caching */
+    private HttpCache cache;
+    private boolean acceptEncoding;
+    private boolean compressRequests;
+    private final ContentCoding contentCoding;
+    /** null to run the asynchronous methods as blocking requests on the executor */
+    private AsyncHttp async;
+    private int chunkSize;
 
     public HttpFilesystem(World io, String scheme) {
         super(io, new Features(true, true, false, false, false, false, false), scheme);
@@ -86,6 +95,12 @@ public class HttpFilesystem extends Filesystem {
         this.defaultDav = null;
         this.socketFactorySelector = HttpFilesystem::defaultSocketFactorySelector;
         this.proxies = new HashMap<>();
+        this.cache = null;
+        this.acceptEncoding = false;
+        this.compressRequests = false;
+        this.contentCoding = new ContentCoding();
+        this.async = null;
+        this.chunkSize = 2048;
         pp = Proxy.forPropertiesOpt(scheme);
         if (pp != null) {
             proxies.put(scheme, pp);
@@ -172,6 +187,66 @@ public class HttpFilesystem extends Filesystem {
         }
     }
 
+    public HttpCache getCache() {
+        return cache;
+    }
+
+    /** @param cache null to disable caching */
+    public void setCache(HttpCache cache) {
+        this.cache = cache;
+    }
+
+    public boolean getAcceptEncoding() {
+        return acceptEncoding;
+    }
+
+    /**
+     * @param acceptEncoding true to ask for gzip or deflate compressed responses for GET, POST, PATCH and PROPFIND,
+     *                       they are decoded transparently. Range and HEAD requests are not affected.
+     */
+    public void setAcceptEncoding(boolean acceptEncoding) {
+        this.acceptEncoding = acceptEncoding;
+    }
+
+    public boolean getCompressRequests() {
+        return compressRequests;
+    }
+
+    /** @param compressRequests true to send gzip compressed bodies for PUT and POST; the server has to support this */
+    public void setCompressRequests(boolean compressRequests) {
+        this.compressRequests = compressRequests;
+    }
+
+    /** @return counters for compressed bodies */
+    public ContentCoding getContentCoding() {
+        return contentCoding;
+    }
+
+    /** @return null if the socket engine is used */
+    public AsyncHttp getAsync() {
+        return async;
+    }
+
+    /**
+     * Selects the engine for the asynchronous HttpNode methods: true for the non-blocking AsyncHttp, false for the default
+     * socket engine with blocking requests running on the executor. The synchronous methods always use the socket engine.
+     */
+    public void setAsync(boolean enable) {
+        async = enable ? new AsyncHttp(this) : null;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /** @param chunkSize buffer size for streaming PUT requests, i.e. the size of the chunks sent unless larger blocks are written */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("invalid chunk size: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
     public Boolean getDefaultDav() {
         return defaultDav;
     }
@@ -15,6 +15,8 @@
  */
 package net.oneandone.sushi.fs.http;
 
+import net.oneandone.sushi.fs.Attributes;
+import net.oneandone.sushi.fs.CopyException;
 import net.oneandone.sushi.fs.CopyFileFromException;
 import net.oneandone.sushi.fs.CopyFileToException;
 import net.oneandone.sushi.fs.DeleteException;
@@ -32,6 +34,7 @@ import net.oneandone.sushi.fs.Node;
 import net.oneandone.sushi.fs.NodeNotFoundException;
 import net.oneandone.sushi.fs.SetLastModifiedException;
 import net.oneandone.sushi.fs.SizeException;
+import net.oneandone.sushi.fs.file.FileNode;
 import net.oneandone.sushi.fs.http.model.Body;
 import net.oneandone.sushi.fs.http.model.Header;
 import net.oneandone.sushi.fs.http.model.HeaderList;
@@ -40,28 +43,43 @@ import net.oneandone.sushi.fs.http.model.MultiStatus;
 import net.oneandone.sushi.fs.http.model.Name;
 import net.oneandone.sushi.fs.http.model.Property;
 import net.oneandone.sushi.fs.http.model.ProtocolException;
+import net.oneandone.sushi.fs.http.model.Request;
 import net.oneandone.sushi.fs.http.model.StatusCode;
+import net.oneandone.sushi.io.Buffer;
 import net.oneandone.sushi.util.Strings;
 import net.oneandone.sushi.util.Util;
 
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.GroupPrincipal;
 import java.nio.file.attribute.UserPrincipal;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class HttpNode extends Node<HttpNode> {
     private final HttpRoot root;
@@ -267,6 +285,14 @@ public class HttpNode extends Node<HttpNode> {
         }
     }
 
+    Boolean getDav() {
+        return isDav;
+    }
+
+    void setDav(Boolean dav) {
+        isDav = dav;
+    }
+
     public String davSize() throws IOException {
         boolean oldTryDir;
         Property property;
@@ -346,14 +372,18 @@ public class HttpNode extends Node<HttpNode> {
             throw new GetLastModifiedException(this, e);
         }
         try {
-            synchronized (FMT) {
-                return FMT.parse(result).getTime();
-            }
+            return parseDate(result);
         } catch (ParseException e) {
             throw new GetLastModifiedException(this, e);
         }
     }
 
+    static long parseDate(String str) throws ParseException {
+        synchronized (FMT) {
+            return FMT.parse(str).getTime();
+        }
+    }
+
     public String davGetLastModified() throws IOException {
         synchronized (tryLock) {
             try {
@@ -592,35 +622,329 @@ public class HttpNode extends Node<HttpNode> {
         return false;
     }
 
+    /** Uses the filesystem's cache, if configured */
     @Override
     public InputStream newInputStream() throws NewInputStreamException, FileNotFoundException {
+        HttpCache cache;
+
+        cache = root.getFilesystem().getCache();
         synchronized (tryLock) {
             tryDir = false;
             try {
-                return Method.get(this);
+                return cache == null ? Method.get(this) : cache.get(this);
             } catch (StatusException e) {
-                switch (e.getStatusLine().code) {
-                    case StatusCode.MOVED_TEMPORARILY:
-                        throw new NewInputStreamException(this, new MovedTemporarilyException(e.getHeaderList().getFirstValue("Location")));
-                    case StatusCode.NOT_FOUND:
-                    case StatusCode.GONE:
-                    case StatusCode.MOVED_PERMANENTLY:
-                        throw new FileNotFoundException(this, e);
-                    default:
-                        throw new NewInputStreamException(this, e);
+                throw newInputStreamException(e);
+            } catch (IOException e) {
+                throw new NewInputStreamException(this, e);
+            }
+        }
+    }
+
+    /**
+     * Reads a range of this file with a range request. If the server does not support ranges, the preceding
+     * bytes are skipped on the client side.
+     *
+     * @param length -1 to read all bytes starting at offset
+     */
+    public InputStream newInputStream(long offset, long length) throws NewInputStreamException, FileNotFoundException {
+        Request.ResponseStream stream;
+
+        stream = rangeStream(offset, length);
+        switch (stream.getStatusLine().code) {
+            case StatusCode.PARTIAL_CONTENT:
+                return stream;
+            case StatusCode.RANGE_NOT_SATISFIABLE:
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    throw new NewInputStreamException(this, e);
                 }
+                return new ByteArrayInputStream(new byte[0]);
+            default:
+                try {
+                    skip(stream, offset);
+                } catch (IOException e) {
+                    throw new NewInputStreamException(this, e);
+                }
+                return length < 0 ? stream : new RangeInputStream(stream, length);
+        }
+    }
+
+    private Request.ResponseStream rangeStream(long offset, long length) throws NewInputStreamException, FileNotFoundException {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset: " + offset);
+        }
+        if (length == 0 || length < -1) {
+            throw new IllegalArgumentException("length: " + length);
+        }
+        synchronized (tryLock) {
+            tryDir = false;
+            try {
+                return Method.get(this, offset, length);
+            } catch (StatusException e) {
+                throw newInputStreamException(e);
             } catch (IOException e) {
                 throw new NewInputStreamException(this, e);
             }
         }
     }
 
+    NewInputStreamException newInputStreamException(StatusException e) throws FileNotFoundException {
+        switch (e.getStatusLine().code) {
+            case StatusCode.MOVED_TEMPORARILY:
+                return new NewInputStreamException(this, new MovedTemporarilyException(e.getHeaderList().getFirstValue("Location")));
+            case StatusCode.NOT_FOUND:
+            case StatusCode.GONE:
+            case StatusCode.MOVED_PERMANENTLY:
+                throw new FileNotFoundException(this, e);
+            default:
+                return new NewInputStreamException(this, e);
+        }
+    }
+
+    /** Reads at most length bytes; aborts the response if there's more */
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(Request.ResponseStream src, long length) {
+            super(src);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result;
+
+            if (remaining <= 0) {
+                return -1;
+            }
+            result = super.read();
+            if (result != -1) {
+                remaining--;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int ofs, int len) throws IOException {
+            int result;
+
+            if (remaining <= 0) {
+                return -1;
+            }
+            result = super.read(b, ofs, (int) Math.min(len, remaining));
+            if (result > 0) {
+                remaining -= result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result;
+
+            if (remaining <= 0) {
+                return 0;
+            }
+            result = super.skip(Math.min(n, remaining));
+            if (result > 0) {
+                remaining -= result;
+            }
+            return result;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in.read() != -1) {
+                ((Request.ResponseStream) in).abort();
+            } else {
+                super.close();
+            }
+        }
+    }
+
+    /** Uses a range request to skip bytes */
+    @Override
     public long copyFileTo(OutputStream dest, long skip) throws FileNotFoundException, CopyFileToException {
-        return copyFileToImpl(dest, skip);
+        if (skip <= 0) {
+            return copyFileToImpl(dest, 0);
+        }
+        try (InputStream src = newInputStream(skip, -1)) {
+            return getWorld().getBuffer().copy(src, dest);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new CopyFileToException(this, e);
+        }
+    }
+
+    /**
+     * Downloads this file into dest, fetching segments in parallel with range requests over the specified
+     * number of connections. Falls back to a normal download if the file is small or the server does not
+     * support ranges.
+     *
+     * @return number of bytes written
+     */
+    public long downloadTo(FileNode dest, int connections) throws IOException {
+        long size;
+        long segment;
+        Request.ResponseStream first;
+        ExecutorService executor;
+        List<Future<Long>> futures;
+        IOException failure;
+        boolean rangesIgnored;
+
+        size = size();
+        if (connections < 2 || size < MIN_SEGMENT * 2) {
+            try (OutputStream out = dest.newOutputStream()) {
+                return copyFileTo(out);
+            }
+        }
+        segment = Math.max(MIN_SEGMENT, (size + connections - 1) / connections);
+        try (FileChannel channel = FileChannel.open(dest.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            first = rangeStream(0, segment);
+            if (first.getStatusLine().code != StatusCode.PARTIAL_CONTENT) {
+                // ranges not supported
+                return write(first, channel, 0, -1);
+            }
+            if (!isRange(first, 0)) {
+                first.abort();
+                return writeAll(channel);
+            }
+            executor = Executors.newFixedThreadPool(connections - 1);
+            futures = new ArrayList<>();
+            failure = null;
+            rangesIgnored = false;
+            try {
+                for (long offset = segment; offset < size; offset += segment) {
+                    long ofs = offset;
+                    long len = Math.min(segment, size - offset);
+
+                    futures.add(executor.submit(() -> write(checkedRangeStream(ofs, len), channel, ofs, len)));
+                }
+                write(first, channel, 0, segment);
+                for (Future<Long> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof RangeIgnoredException) {
+                            rangesIgnored = true;
+                        } else if (e.getCause() instanceof IOException) {
+                            if (failure == null) {
+                                failure = (IOException) e.getCause();
+                            }
+                        } else {
+                            throw new IllegalStateException(e.getCause());
+                        }
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException(e.getMessage());
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (rangesIgnored) {
+                return writeAll(channel);
+            }
+        }
+        return size;
+    }
+
+    /** Thrown by segment downloads if the server answers a range request with something else */
+    private static class RangeIgnoredException extends IOException {
+        RangeIgnoredException(String message) {
+            super(message);
+        }
+    }
+
+    private Request.ResponseStream checkedRangeStream(long offset, long length) throws IOException {
+        Request.ResponseStream result;
+
+        result = rangeStream(offset, length);
+        if (!isRange(result, offset)) {
+            result.abort();
+            throw new RangeIgnoredException("range request at " + offset + " answered with " + result.getStatusLine());
+        }
+        return result;
+    }
+
+    /** @return true if the response is partial content starting at offset */
+    private static boolean isRange(Request.ResponseStream response, long offset) {
+        String range;
+
+        if (response.getStatusLine().code != StatusCode.PARTIAL_CONTENT) {
+            return false;
+        }
+        range = response.getHeaderList().getFirstValue("Content-Range");
+        return range != null && range.trim().startsWith("bytes " + offset + "-");
+    }
+
+    /** Fallback to a single GET if segments cannot be trusted */
+    private long writeAll(FileChannel channel) throws IOException {
+        channel.truncate(0);
+        return write(newInputStream(), channel, 0, -1);
+    }
+
+    private static final long MIN_SEGMENT = 1024 * 1024;
+
+    /**
+     * @param expected -1 to write everything
+     * @return bytes written
+     */
+    private long write(InputStream src, FileChannel dest, long position, long expected) throws IOException {
+        byte[] buffer;
+        int count;
+        long written;
+        ByteBuffer chunk;
+
+        buffer = new byte[Buffer.DEFAULT_SIZE];
+        written = 0;
+        try (InputStream in = src) {
+            while (true) {
+                count = in.read(buffer);
+                if (count == -1) {
+                    break;
+                }
+                chunk = ByteBuffer.wrap(buffer, 0, count);
+                while (chunk.hasRemaining()) {
+                    written += dest.write(chunk, position + written);
+                }
+            }
+        }
+        if (expected != -1 && written != expected) {
+            throw new ProtocolException("segment at " + position + ": expected " + expected + " bytes, got " + written);
+        }
+        return written;
     }
 
-    public void copyFileFrom(InputStream dest) throws FileNotFoundException, CopyFileFromException {
-        copyFileFromImpl(dest);
+    @Override
+    public void copyFileFrom(InputStream src) throws FileNotFoundException, CopyFileFromException {
+        copyFileFromImpl(src);
+    }
+
+    /** Uploads FileNodes with a fixed length and without copying them into the heap. */
+    @Override
+    public void copyFileFrom(Node src) throws FileNotFoundException, CopyException {
+        if (!(src instanceof FileNode)) {
+            super.copyFileFrom(src);
+            return;
+        }
+        try {
+            put((FileNode) src);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new CopyException(src, this, e);
+        }
     }
 
     @Override
@@ -696,7 +1020,112 @@ public class HttpNode extends Node<HttpNode> {
         }
     }
 
-    private boolean samePath(URI uri) {
+    /**
+     * Lists the tree with a single Depth: infinity PROPFIND if depth is unbounded, with one depth-1 PROPFIND per directory
+     * if depth is bounded or if the server refuses infinity. Responses are processed as they are parsed.
+     */
+    @Override
+    public Map<String, List<HttpNode>> listTree(int depth, Map<String, Attributes> attributes) throws ListException, DirectoryNotFoundException {
+        Map<String, List<HttpNode>> result;
+        List<HttpNode> level;
+        List<HttpNode> next;
+
+        result = new HashMap<>();
+        try {
+            if (depth == Integer.MAX_VALUE) {
+                try {
+                    listTree(this, Method.DEPTH_INFINITY, result, null, attributes);
+                    return result;
+                } catch (MovedPermanentlyException e) {
+                    // file or bad request - handled below
+                } catch (StatusException e) {
+                    if (e.getStatusLine().code != StatusCode.FORBIDDEN && e.getStatusLine().code != StatusCode.NOT_IMPLEMENTED) {
+                        throw e;
+                    }
+                    // infinity refused, see https://tools.ietf.org/html/rfc4918#section-9.1
+                }
+                result.clear();
+            }
+            level = Collections.singletonList(this);
+            for (int i = 0; i < depth && !level.isEmpty(); i++) {
+                next = new ArrayList<>();
+                for (HttpNode dir : level) {
+                    try {
+                        listTree(dir, 1, result, next, attributes);
+                    } catch (MovedPermanentlyException e) {
+                        result.put(dir.path, null);
+                    } catch (FileNotFoundException e) {
+                        if (dir == this) {
+                            throw e;
+                        }
+                        // removed in the meantime; no entry
+                    }
+                }
+                level = next;
+            }
+            return result;
+        } catch (FileNotFoundException e) {
+            try {
+                if (isFile()) {
+                    result.clear();
+                    result.put(path, null);
+                    return result;
+                }
+            } catch (ExistsException e2) {
+                e.addSuppressed(e2);
+            }
+            throw new DirectoryNotFoundException(this);
+        } catch (IOException e) {
+            throw new ListException(this, e);
+        }
+    }
+
+    /** @param subdirectories receives the sub directories found, null to not collect them */
+    private void listTree(HttpNode dir, int depth, Map<String, List<HttpNode>> result, List<HttpNode> subdirectories,
+                          Map<String, Attributes> attributes) throws IOException {
+        synchronized (dir.tryLock) {
+            dir.tryDir = true;
+        }
+        try (InputStream src = Method.propfindStream(dir, depth, Probe.PROPFIND_NAMES)) {
+            MultiStatus.fromResponse(src, (href, properties) -> {
+                URI uri;
+                HttpNode node;
+                Probe probe;
+                Attributes snapshot;
+
+                try {
+                    uri = new URI(href);
+                } catch (URISyntaxException e) {
+                    throw new ProtocolException("invalid href: " + href);
+                }
+                if (dir.samePath(uri)) {
+                    result.putIfAbsent(dir.path, new ArrayList<>());
+                    return;
+                }
+                node = createChild(uri);
+                probe = Probe.forProperties(node, properties, node.tryDir);
+                synchronized (node.tryLock) {
+                    node.tryDir = probe.directory;
+                }
+                if (attributes != null) {
+                    snapshot = probe.toAttributes();
+                    if (snapshot != null) {
+                        attributes.put(node.path, snapshot);
+                    }
+                }
+                result.computeIfAbsent(node.path.substring(0, Math.max(0, node.path.lastIndexOf('/'))), key -> new ArrayList<>()).add(node);
+                if (!probe.directory) {
+                    result.put(node.path, null);
+                } else if (subdirectories != null) {
+                    subdirectories.add(node);
+                } else {
+                    result.putIfAbsent(node.path, new ArrayList<>());
+                }
+            });
+        }
+    }
+
+    boolean samePath(URI uri) {
         String cmp;
         int idx;
         int cl;
@@ -714,7 +1143,7 @@ public class HttpNode extends Node<HttpNode> {
         return false;
     }
 
-    private HttpNode createChild(URI href) {
+    HttpNode createChild(URI href) {
         String childPath;
         boolean dir;
         HttpNode result;
@@ -871,30 +1300,83 @@ public class HttpNode extends Node<HttpNode> {
      * see http://tools.ietf.org/html/rfc2616#section-5.1.2
      */
     public String getRequestPath() {
+        synchronized (tryLock) {
+            return getRequestPath(tryDir);
+        }
+    }
+
+    /** @param dir true to request the directory path, i.e. with a tailing slash */
+    String getRequestPath(boolean dir) {
         StringBuilder builder;
 
-        synchronized (tryLock) {
-            builder = new StringBuilder(path.length() + 10);
-            builder.append('/');
-            if (!path.isEmpty()) {
-                try {
-                    builder.append(new URI(null, null, path, null).getRawPath());
-                } catch (URISyntaxException e) {
-                    throw new IllegalStateException();
-                }
-                if (tryDir) {
-                    builder.append('/');
-                }
+        builder = new StringBuilder(path.length() + 10);
+        builder.append('/');
+        if (!path.isEmpty()) {
+            try {
+                builder.append(new URI(null, null, path, null).getRawPath());
+            } catch (URISyntaxException e) {
+                throw new IllegalStateException();
             }
-            if (encodedQuery != null) {
-                builder.append('?');
-                builder.append(encodedQuery);
+            if (dir) {
+                builder.append('/');
             }
         }
+        if (encodedQuery != null) {
+            builder.append('?');
+            builder.append(encodedQuery);
+        }
         return builder.toString();
     }
 
 
+    //-- asynchronous variants, see HttpFilesystem.setAsync
+
+    public CompletableFuture<Boolean> existsAsync() {
+        AsyncHttp async;
+
+        async = root.getFilesystem().getAsync();
+        return async != null ? async.exists(this) : root.getFilesystem().submit(this::exists);
+    }
+
+    @Override
+    public CompletableFuture<Long> sizeAsync() {
+        AsyncHttp async;
+
+        async = root.getFilesystem().getAsync();
+        return async != null ? async.size(this) : super.sizeAsync();
+    }
+
+    @Override
+    public CompletableFuture<byte[]> readBytesAsync() {
+        AsyncHttp async;
+
+        async = root.getFilesystem().getAsync();
+        return async != null ? async.readBytes(this) : super.readBytesAsync();
+    }
+
+    @Override
+    public CompletableFuture<Void> writeBytesAsync(byte... bytes) {
+        return putAsync(bytes);
+    }
+
+    /** @return future for null if this is a file */
+    public CompletableFuture<List<HttpNode>> listAsync() {
+        AsyncHttp async;
+
+        async = root.getFilesystem().getAsync();
+        return async != null ? async.list(this) : root.getFilesystem().submit(this::list);
+    }
+
+    public CompletableFuture<Void> putAsync(byte... bytes) {
+        AsyncHttp async;
+
+        async = root.getFilesystem().getAsync();
+        return async != null ? async.put(this, bytes) : root.getFilesystem().submit(() -> {
+            put(bytes);
+            return null;
+        });
+    }
+
     //-- REST methods
 
     public void put(String str) throws IOException {
@@ -907,6 +1389,33 @@ public class HttpNode extends Node<HttpNode> {
         }
     }
 
+    /** Sends the file with a fixed length and without copying it into the heap, unless requests are compressed. */
+    public void put(FileNode src) throws IOException {
+        OutputStream dest;
+
+        if (isDirectory()) {
+            throw new NewDirectoryOutputStreamException(this);
+        }
+        if (root.getFilesystem().getCompressRequests()) {
+            synchronized (tryLock) {
+                tryDir = false;
+                dest = Method.put(this);
+            }
+            try (OutputStream out = dest) {
+                src.copyFileTo(out);
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(src.toPath(), StandardOpenOption.READ)) {
+                synchronized (tryLock) {
+                    tryDir = false;
+                    Method.put(this, channel, 0, channel.size());
+                }
+            } catch (NoSuchFileException e) {
+                throw new FileNotFoundException(src, e);
+            }
+        }
+    }
+
     public String post(String str) throws IOException {
         byte[] result;
 
@@ -928,20 +1437,12 @@ public class HttpNode extends Node<HttpNode> {
         }
     }
 
+    /** Closing the stream returns the connection to the pool. */
     public InputStream postStream(Body body) throws IOException {
         try {
             return Method.post(this, body);
         } catch (StatusException e) {
-            switch (e.getStatusLine().code) {
-                case StatusCode.MOVED_TEMPORARILY:
-                    throw new MovedTemporarilyException(e.getHeaderList().getFirstValue("Location"));
-                case StatusCode.NOT_FOUND:
-                case StatusCode.GONE:
-                case StatusCode.MOVED_PERMANENTLY:
-                    throw new FileNotFoundException(this);
-                default:
-                    throw e;
-            }
+            throw restException(e);
         }
     }
 
@@ -966,4 +1467,26 @@ public class HttpNode extends Node<HttpNode> {
         return Method.patch(this, body);
     }
 
+    /** Closing the stream returns the connection to the pool. */
+    public InputStream patchStream(Body body) throws IOException {
+        try {
+            return Method.patchStream(this, body);
+        } catch (StatusException e) {
+            throw restException(e);
+        }
+    }
+
+    private IOException restException(StatusException e) {
+        switch (e.getStatusLine().code) {
+            case StatusCode.MOVED_TEMPORARILY:
+                return new MovedTemporarilyException(e.getHeaderList().getFirstValue("Location"));
+            case StatusCode.NOT_FOUND:
+            case StatusCode.GONE:
+            case StatusCode.MOVED_PERMANENTLY:
+                return new FileNotFoundException(this);
+            default:
+                return e;
+        }
+    }
+
 }
@@ -30,14 +30,22 @@ import net.oneandone.sushi.io.LoggingAsciiOutputStream;
 import javax.net.SocketFactory;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URI;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 
 public class HttpRoot implements Root<HttpNode> {
@@ -185,6 +193,140 @@ public class HttpRoot implements Root<HttpNode> {
         return allocated;
     }
 
+    //-- pipelining
+
+    /** maximum number of requests sent without reading the responses */
+    private static final int PIPELINE_DEPTH = 32;
+
+    /** Probes with HEAD requests over one connection, or with PROPFIND requests if this root is known to support webdav */
+    public List<Probe> probe(List<HttpNode> nodes) throws IOException {
+        return probe(nodes, Boolean.TRUE.equals(dav), 1);
+    }
+
+    /**
+     * Probes the nodes with pipelined requests: requests are sent without waiting for the previous response, which saves
+     * a round trip per node. Responses are matched in order. If a connection fails, the remaining nodes are probed with
+     * sequential requests. PROPFIND probes are repeated with HEAD if the server does not support webdav.
+     *
+     * @param propfind true for depth-0 PROPFIND requests, false for HEAD requests
+     * @param connections number of connections to use in parallel
+     * @return probes in the order of nodes
+     */
+    public List<Probe> probe(List<HttpNode> nodes, boolean propfind, int connections) throws IOException {
+        List<Probe> result;
+        int count;
+        int slice;
+        List<CompletableFuture<List<Probe>>> futures;
+        List<HttpNode> retry;
+        List<Probe> retried;
+        Iterator<Probe> iter;
+
+        for (HttpNode node : nodes) {
+            if (!equals(node.getRoot())) {
+                throw new IllegalArgumentException("node from different root: " + node);
+            }
+        }
+        count = Math.max(1, Math.min(connections, nodes.size()));
+        if (count == 1) {
+            result = pipeline(nodes, propfind);
+        } else {
+            slice = (nodes.size() + count - 1) / count;
+            futures = new ArrayList<>();
+            for (int i = 0; i < nodes.size(); i += slice) {
+                final List<HttpNode> sub = nodes.subList(i, Math.min(nodes.size(), i + slice));
+                futures.add(filesystem.submit(() -> pipeline(sub, propfind)));
+            }
+            result = new ArrayList<>(nodes.size());
+            for (CompletableFuture<List<Probe>> future : futures) {
+                try {
+                    result.addAll(future.get());
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException(e.getMessage());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        }
+        if (propfind) {
+            retry = new ArrayList<>();
+            for (Probe probe : result) {
+                if (probe.status == StatusCode.METHOD_NOT_ALLOWED) {
+                    retry.add(probe.node);
+                }
+            }
+            if (!retry.isEmpty()) {
+                iter = probe(retry, false, connections).iterator();
+                retried = new ArrayList<>(result.size());
+                for (Probe probe : result) {
+                    retried.add(probe.status == StatusCode.METHOD_NOT_ALLOWED ? iter.next() : probe);
+                }
+                result = retried;
+            }
+        }
+        return result;
+    }
+
+    private List<Probe> pipeline(List<HttpNode> nodes, boolean propfind) throws IOException {
+        List<Probe> result;
+        Probe.Pending request;
+
+        result = new ArrayList<>(nodes.size());
+        while (result.size() < nodes.size() && pipelineConnection(nodes, propfind, result)) {
+            // continue with a new connection
+        }
+        for (int i = result.size(); i < nodes.size(); i++) {
+            request = new Probe.Pending(this, nodes.get(i), propfind);
+            result.add(request.toProbe(request.request.request(request.body)));
+        }
+        return result;
+    }
+
+    /**
+     * Sends requests for the nodes not yet in result over one connection.
+     *
+     * @return false if no progress was made
+     */
+    private boolean pipelineConnection(List<HttpNode> nodes, boolean propfind, List<Probe> result) throws IOException {
+        int start;
+        int next;
+        HttpConnection connection;
+        Deque<Probe.Pending> pending;
+        Probe.Pending request;
+        Response response;
+
+        start = result.size();
+        next = start;
+        pending = new ArrayDeque<>();
+        connection = allocate();
+        try {
+            while (result.size() < nodes.size()) {
+                while (next < nodes.size() && pending.size() < PIPELINE_DEPTH) {
+                    request = new Probe.Pending(this, nodes.get(next++), propfind);
+                    request.request.bodyHeader(request.body);
+                    request.request.send(connection, request.body);
+                    pending.add(request);
+                }
+                request = pending.remove();
+                response = request.request.receive(connection);
+                result.add(request.toProbe(response));
+                if (response.close()) {
+                    // server closes the connection, pending requests are lost
+                    connection.close();
+                    return true;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            connection.close();
+            return result.size() > start;
+        } finally {
+            free(connection);
+        }
+    }
+
     public HttpConnection connect() throws IOException {
         String connectProtocol;
         String connectHostname;
@@ -197,6 +339,7 @@ public class HttpRoot implements Root<HttpNode> {
         AsciiInputStream aIn;
         Response response;
         SocketFactory factory;
+        SocketChannel channel;
 
         if (proxy != null) {
             connectProtocol = proxy.getScheme();
@@ -210,8 +353,11 @@ public class HttpRoot implements Root<HttpNode> {
         factory = filesystem.getSocketFactorySelector().apply(connectProtocol, connectHostname);
         if (factory != null) {
             socket = factory.createSocket(connectHostname, connectPort);
+            channel = null;
         } else {
-            socket = new Socket(connectHostname, connectPort);
+            // open with a channel to allow zero-copy uploads
+            channel = SocketChannel.open(new InetSocketAddress(connectHostname, connectPort));
+            socket = channel.socket();
         }
 
         socket.setTcpNoDelay(true);
@@ -220,6 +366,7 @@ public class HttpRoot implements Root<HttpNode> {
         input = socket.getInputStream();
         output = socket.getOutputStream();
         if (HttpFilesystem.WIRE.isLoggable(Level.FINE)) {
+            channel = null; // would bypass logging
             input = new LoggingAsciiInputStream(input, new LineLogger(HttpFilesystem.WIRE, "<<< "));
             output = new LoggingAsciiOutputStream(output, new LineLogger(HttpFilesystem.WIRE, ">>> "));
         }
@@ -237,7 +384,7 @@ public class HttpRoot implements Root<HttpNode> {
             }
 
         }
-        return new HttpConnection(socket, aIn, aOut);
+        return new HttpConnection(socket, aIn, aOut, channel);
     }
 
     public void addDefaultHeader(HeaderList headerList) {
@@ -0,0 +1,152 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.http;
+
+import net.oneandone.sushi.fs.Attributes;
+import net.oneandone.sushi.fs.http.model.Body;
+import net.oneandone.sushi.fs.http.model.Header;
+import net.oneandone.sushi.fs.http.model.Method;
+import net.oneandone.sushi.fs.http.model.MultiStatus;
+import net.oneandone.sushi.fs.http.model.Name;
+import net.oneandone.sushi.fs.http.model.Request;
+import net.oneandone.sushi.fs.http.model.Response;
+import net.oneandone.sushi.fs.http.model.StatusCode;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.List;
+
+/** Result of probing a node with a HEAD or depth-0 PROPFIND request, see HttpRoot.probe. Immutable. */
+public class Probe {
+    public static final Name[] PROPFIND_NAMES = { Name.GETCONTENTLENGTH, Name.GETLASTMODIFIED, Name.RESOURCETYPE };
+
+    /** Request to probe a node */
+    static class Pending {
+        public final HttpNode node;
+        public final String path;
+        public final Request request;
+        /** null for HEAD */
+        public final Body body;
+
+        Pending(HttpRoot root, HttpNode node, boolean propfind) {
+            this.node = node;
+            this.path = node.getRequestPath();
+            this.request = new Request(root, node.allHeaders(), propfind ? "PROPFIND" : "HEAD", path);
+            if (propfind) {
+                request.addRequestHeader("Depth", "0");
+                this.body = Method.propfindBody(node, PROPFIND_NAMES);
+            } else {
+                this.body = null;
+            }
+        }
+
+        public Probe toProbe(Response response) throws IOException {
+            return forResponse(node, path, response);
+        }
+    }
+
+    public static Probe forResponse(HttpNode node, String requestPath, Response response) throws IOException {
+        int status;
+
+        status = response.getStatusLine().code;
+        switch (status) {
+            case StatusCode.OK:
+                return new Probe(node, status, true, requestPath.endsWith("/"),
+                        size(response.getHeaderList().getFirstValue(Header.CONTENT_LENGTH)),
+                        lastModified(response.getHeaderList().getFirstValue("Last-Modified")));
+            case StatusCode.MULTI_STATUS:
+                return forProperties(node, MultiStatus.fromResponse(response.getBodyBytes()), false);
+            case StatusCode.MOVED_PERMANENTLY:
+                // the node exists with/without tailing slash
+                return new Probe(node, status, true, !requestPath.endsWith("/"), -1, -1);
+            default:
+                return new Probe(node, status, false, false, -1, -1);
+        }
+    }
+
+    /** @param directory true if known to be a directory, e.g. because of a trailing slash in the href */
+    public static Probe forProperties(HttpNode node, List<MultiStatus> lst, boolean directory) throws IOException {
+        MultiStatus ms;
+        long size;
+        long lastModified;
+
+        ms = MultiStatus.lookup(lst, Name.GETCONTENTLENGTH, StatusCode.OK);
+        size = ms == null ? -1 : size((String) ms.property.getValue());
+        ms = MultiStatus.lookup(lst, Name.GETLASTMODIFIED, StatusCode.OK);
+        lastModified = ms == null ? -1 : lastModified((String) ms.property.getValue());
+        ms = MultiStatus.lookup(lst, Name.RESOURCETYPE, StatusCode.OK);
+        directory = directory || (ms != null && ms.property.getValue() instanceof org.w3c.dom.Node
+                && "collection".equals(((org.w3c.dom.Node) ms.property.getValue()).getLocalName()));
+        return new Probe(node, StatusCode.MULTI_STATUS, true, directory, directory ? -1 : size, lastModified);
+    }
+
+    private static long size(String str) throws IOException {
+        if (str == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(str.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("invalid size: " + str, e);
+        }
+    }
+
+    private static long lastModified(String str) {
+        if (str == null) {
+            return -1;
+        }
+        try {
+            return HttpNode.parseDate(str);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    //--
+
+    public final HttpNode node;
+    /** status code of the response, check this for codes other than 200, 207, 301 and 404 */
+    public final int status;
+    public final boolean exists;
+    /** true if known to be a directory */
+    public final boolean directory;
+    /** -1 if unknown */
+    public final long size;
+    /** -1 if unknown */
+    public final long lastModified;
+
+    public Probe(HttpNode node, int status, boolean exists, boolean directory, long size, long lastModified) {
+        this.node = node;
+        this.status = status;
+        this.exists = exists;
+        this.directory = directory;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    /** @return null if the probe lacks size or last modified date */
+    public Attributes toAttributes() {
+        if (!exists || lastModified == -1 || (!directory && size == -1)) {
+            return null;
+        }
+        return new Attributes(true, false, !directory, directory, directory ? 0 : size, lastModified, null, null, null);
+    }
+
+    @Override
+    public String toString() {
+        return node + ": " + status + (exists ? (directory ? " directory" : " size=" + size) : " not found");
+    }
+}
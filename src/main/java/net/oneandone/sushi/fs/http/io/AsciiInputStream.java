@@ -15,73 +15,164 @@
  */
 package net.oneandone.sushi.fs.http.io;
 
+import net.oneandone.sushi.fs.http.model.Header;
+import net.oneandone.sushi.fs.http.model.ProtocolException;
+
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
-/** InputStream that can read CRLF-terminated lines into (ascii-decoded) Strings. */
+/**
+ * InputStream that can read CRLF-terminated lines into (ascii-decoded) Strings. Lines are decoded directly from the
+ * buffer; headers are split without creating a String for the whole line.
+ */
 public class AsciiInputStream extends BufferedInputStream {
-    private final char[] charBuffer;
-
     public AsciiInputStream(InputStream src, int buffersize) {
         super(src, buffersize);
-        charBuffer = new char[buffersize];
     }
 
     /** @return null for eof */
     public String readLine() throws IOException {
-        String buffered;
-        StringBuilder builder;
+        int lf;
+        int end;
+        String result;
 
-        buffered = readBufferedLine();
-        if (buffered != null) {
-            return buffered;
+        lf = bufferLine();
+        if (lf == -1) {
+            return readStreamLine();
         }
-        builder = new StringBuilder(16);
-        if (!readStreamLine(builder)) {
+        end = lineEnd(lf);
+        result = decode(pos, end);
+        pos = lf + 1;
+        return result;
+    }
+
+    /**
+     * Reads a header line. Well-known names are returned as shared instances, see Header.knownName.
+     *
+     * @return null for the empty line terminating the header, or eof
+     */
+    public Header readHeader() throws IOException {
+        int lf;
+        int end;
+        int colon;
+        int nameEnd;
+        int valueStart;
+        String name;
+        String line;
+
+        lf = bufferLine();
+        if (lf == -1) {
+            line = readStreamLine();
+            if (line == null || line.isEmpty()) {
+                return null;
+            }
+            if (line.charAt(0) == ' ' || line.charAt(0) == '\t') {
+                throw new ProtocolException("header continuation is not supported: " + line);
+            }
+            return Header.parse(line);
+        }
+        end = lineEnd(lf);
+        if (end == pos) {
+            pos = lf + 1;
             return null;
         }
-        return builder.toString();
+        if (buf[pos] == ' ' || buf[pos] == '\t') {
+            throw new ProtocolException("header continuation is not supported: " + decode(pos, end));
+        }
+        colon = -1;
+        for (int i = pos; i < end; i++) {
+            if (buf[i] == ':') {
+                colon = i;
+                break;
+            }
+        }
+        if (colon == -1) {
+            throw new ProtocolException("missing : in header: " + decode(pos, end));
+        }
+        nameEnd = colon;
+        while (nameEnd > pos && isWhitespace(buf[nameEnd - 1])) {
+            nameEnd--;
+        }
+        if (nameEnd == pos) {
+            throw new ProtocolException("empty name in header: " + decode(pos, end));
+        }
+        name = Header.knownName(buf, pos, nameEnd - pos);
+        if (name == null) {
+            name = decode(pos, nameEnd);
+        }
+        valueStart = colon + 1;
+        while (valueStart < end && isWhitespace(buf[valueStart])) {
+            valueStart++;
+        }
+        while (end > valueStart && isWhitespace(buf[end - 1])) {
+            end--;
+        }
+        pos = lf + 1;
+        return new Header(name, decode(valueStart, end));
     }
 
     private static final String EMPTY = "";
 
-    private String readBufferedLine() {
-        int c;
-        boolean prevCr;
-        String result;
-        int length;
+    private String decode(int start, int end) {
+        return start == end ? EMPTY : new String(buf, start, end - start, StandardCharsets.ISO_8859_1);
+    }
 
-        prevCr = false;
-        for (int i = this.pos; i < this.count; i++) {
-            c = buf[i];
-            switch (c) {
-                case '\n':
-                    if (prevCr) {
-                        length = (i - 1) - pos;
-                    } else {
-                        // in theory, this is an error, but the spec mandates to tolerate a single \n as line termination
-                        length = i - pos;
-                    }
-                    result = length == 0 ? EMPTY : new String(charBuffer, pos, length);
-                    pos = i + 1;
-                    return result;
-                case '\r':
-                    prevCr = true;
-                    break;
-                default:
-                    prevCr = false;
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /** @return index after the last character of the line terminated at lf */
+    private int lineEnd(int lf) {
+        // the spec mandates to tolerate a single \n as line termination
+        return lf > pos && buf[lf - 1] == '\r' ? lf - 1 : lf;
+    }
+
+    /**
+     * Makes sure the next line is in the buffer, reading more bytes if necessary.
+     *
+     * @return index of the terminating \n in buf, or -1 if the line does not fit into the buffer or eof is reached
+     */
+    private int bufferLine() throws IOException {
+        int start;
+        int n;
+
+        start = pos;
+        while (true) {
+            for (int i = start; i < count; i++) {
+                if (buf[i] == '\n') {
+                    return i;
+                }
+            }
+            if (markpos >= 0 || in == null) {
+                return -1;
             }
-            charBuffer[i] = (char) buf[i];
+            if (pos > 0) {
+                System.arraycopy(buf, pos, buf, 0, count - pos);
+                count -= pos;
+                pos = 0;
+            }
+            if (count == buf.length) {
+                return -1;
+            }
+            start = count;
+            n = in.read(buf, count, buf.length - count);
+            if (n <= 0) {
+                return -1;
+            }
+            count += n;
         }
-        return null;
     }
 
-    private boolean readStreamLine(StringBuilder builder) throws IOException {
+    /** Byte-wise fallback for lines that do not fit into the buffer. */
+    private String readStreamLine() throws IOException {
+        StringBuilder builder;
         int c;
         boolean empty;
         boolean withCr;
 
+        builder = new StringBuilder(16);
         empty = true;
         withCr = false;
         while (true) {
@@ -89,7 +180,7 @@ public class AsciiInputStream extends BufferedInputStream {
             switch (c) {
                 case -1:
                     if (empty) {
-                        return false;
+                        return null;
                     } else {
                         throw new IOException("truncated");
                     }
@@ -97,7 +188,7 @@ public class AsciiInputStream extends BufferedInputStream {
                     if (withCr) {
                         builder.setLength(builder.length() - 1);
                     }
-                    return true;
+                    return builder.toString();
                 case '\r':
                     withCr = true;
                     empty = false;
@@ -34,8 +34,18 @@ public class AsciiOutputStream extends BufferedOutputStream {
     }
 
     public void writeAscii(CharSequence s) throws IOException {
-        for (int i = 0; i < s.length(); i++) {
-            writeAscii(s.charAt(i));
+        int length;
+
+        length = s.length();
+        if (length <= buf.length - count) {
+            // encode into the buffer directly instead of a write call per character
+            for (int i = 0; i < length; i++) {
+                buf[count++] = (byte) s.charAt(i); // ASCII conversion
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                writeAscii(s.charAt(i));
+            }
         }
     }
 
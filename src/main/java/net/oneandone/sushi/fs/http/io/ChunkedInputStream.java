@@ -96,7 +96,7 @@ public class ChunkedInputStream extends InputStream {
         }
         try {
             if (length != EOF) {
-                length = EOF;
+                // read the remaining chunks to leave the connection re-usable
                 skipBuffer.skip(this, Long.MAX_VALUE);
             }
         } finally {
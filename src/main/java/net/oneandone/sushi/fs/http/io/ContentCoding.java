@@ -0,0 +1,288 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.http.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * gzip and deflate content codings https://tools.ietf.org/html/rfc7231#section-3.1.2.1, with counters comparing the
+ * number of bytes transferred with the number of bytes before compression/after decompression. Thread-safe.
+ */
+public class ContentCoding {
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    public static final String ACCEPT = GZIP + ", " + DEFLATE;
+
+    private final AtomicLong receivedCompressed;
+    private final AtomicLong receivedDecoded;
+    private final AtomicLong sentRaw;
+    private final AtomicLong sentCompressed;
+
+    public ContentCoding() {
+        this.receivedCompressed = new AtomicLong();
+        this.receivedDecoded = new AtomicLong();
+        this.sentRaw = new AtomicLong();
+        this.sentCompressed = new AtomicLong();
+    }
+
+    /** @return bytes of compressed response bodies, as received */
+    public long getReceivedCompressed() {
+        return receivedCompressed.get();
+    }
+
+    /** @return bytes of compressed response bodies after decoding */
+    public long getReceivedDecoded() {
+        return receivedDecoded.get();
+    }
+
+    /** @return bytes of compressed request bodies before compression */
+    public long getSentRaw() {
+        return sentRaw.get();
+    }
+
+    /** @return bytes of compressed request bodies, as sent */
+    public long getSentCompressed() {
+        return sentCompressed.get();
+    }
+
+    /**
+     * @param coding value of a Content-Encoding header
+     * @return null if the coding is not supported
+     */
+    public InputStream decode(String coding, InputStream src) {
+        String name;
+
+        name = coding.trim().toLowerCase();
+        if (GZIP.equals(name) || "x-gzip".equals(name) || DEFLATE.equals(name)) {
+            return new CountingInputStream(new DecodingInputStream(new CountingInputStream(src, receivedCompressed), !DEFLATE.equals(name)), receivedDecoded);
+        } else {
+            return null;
+        }
+    }
+
+    /** @return stream to write uncompressed data to; closing it closes dest */
+    public OutputStream encode(OutputStream dest) throws IOException {
+        return new CountingOutputStream(new GZIPOutputStream(new CountingOutputStream(dest, sentCompressed)), sentRaw);
+    }
+
+    public byte[] encode(byte[] bytes) {
+        ByteArrayOutputStream result;
+
+        result = new ByteArrayOutputStream(bytes.length / 4 + 32);
+        try (OutputStream dest = encode(result)) {
+            dest.write(bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // because we write into memory
+        }
+        return result.toByteArray();
+    }
+
+    //--
+
+    /**
+     * Creates the decompressing stream when reading the first byte - empty bodies (e.g. for error responses)
+     * have no gzip header.
+     */
+    private static class DecodingInputStream extends FilterInputStream {
+        private final boolean gzip;
+        private boolean started;
+
+        DecodingInputStream(InputStream src, boolean gzip) {
+            super(src);
+            this.gzip = gzip;
+            this.started = false;
+        }
+
+        private boolean start() throws IOException {
+            PushbackCheck check;
+
+            if (!started) {
+                started = true;
+                check = new PushbackCheck(in);
+                if (check.empty) {
+                    return false;
+                }
+                in = gzip ? new GZIPInputStream(check) : new InflaterInputStream(check);
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!start()) {
+                return -1;
+            }
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int ofs, int len) throws IOException {
+            if (!start()) {
+                return -1;
+            }
+            return in.read(b, ofs, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (!start()) {
+                return 0;
+            }
+            return in.skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return started ? in.available() : 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /** Reads one byte ahead to detect empty streams */
+    private static class PushbackCheck extends FilterInputStream {
+        public final boolean empty;
+        private int first;
+
+        PushbackCheck(InputStream src) throws IOException {
+            super(src);
+            this.first = src.read();
+            this.empty = first == -1;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result;
+
+            if (first != -1) {
+                result = first;
+                first = -1;
+                return result;
+            }
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int ofs, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (first != -1) {
+                b[ofs] = (byte) first;
+                first = -1;
+                return 1;
+            }
+            return in.read(b, ofs, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n > 0 && first != -1) {
+                first = -1;
+                return 1;
+            }
+            return in.skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (first != -1 ? 1 : 0) + in.available();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+
+        CountingInputStream(InputStream src, AtomicLong counter) {
+            super(src);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result;
+
+            result = in.read();
+            if (result != -1) {
+                counter.incrementAndGet();
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int ofs, int len) throws IOException {
+            int result;
+
+            result = in.read(b, ofs, len);
+            if (result > 0) {
+                counter.addAndGet(result);
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result;
+
+            result = in.skip(n);
+            counter.addAndGet(result);
+            return result;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private final AtomicLong counter;
+
+        CountingOutputStream(OutputStream dest, AtomicLong counter) {
+            super(dest);
+            this.counter = counter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            counter.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] b, int ofs, int len) throws IOException {
+            out.write(b, ofs, len);
+            counter.addAndGet(len);
+        }
+    }
+}
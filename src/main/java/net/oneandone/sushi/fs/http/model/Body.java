@@ -26,17 +26,16 @@ import java.io.IOException;
 import java.io.InputStream;
 
 public class Body {
+    /** @param serializer has to be owned by the current thread, see Xml.getSerializer() */
     public static Body forDom(Serializer serializer, Document body) {
         ByteArrayOutputStream serialized;
         byte[] bytes;
 
         serialized = new ByteArrayOutputStream();
-        synchronized (serializer) {
-            try {
-                serializer.serialize(new DOMSource(body), new StreamResult(serialized), true);
-            } catch (IOException e) {
-                throw new IllegalStateException(e); // because we serialize into memory
-            }
+        try {
+            serializer.serialize(new DOMSource(body), new StreamResult(serialized), true);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // because we serialize into memory
         }
         bytes = serialized.toByteArray();
         return new Body(null, null, bytes.length, new ByteArrayInputStream(bytes), false);
@@ -17,13 +17,55 @@ package net.oneandone.sushi.fs.http.model;
 
 /** immutable */
 public class Header {
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
     public static final String CONNECTION = "Connection";
     public static final String CONTENT_ENCODING = "Content-Encoding";
     public static final String CONTENT_LENGTH = "Content-Length";
     public static final String CONTENT_TYPE = "Content-Type";
     public static final String HOST = "Host";
+    public static final String RANGE = "Range";
     public static final String TRANSFER_ENCODING = "Transfer-Encoding";
 
+    /** parsed header names that match one of these names (ignoring case) share the instance from this array */
+    private static final String[] KNOWN_NAMES = {
+        CONTENT_LENGTH, CONTENT_TYPE, TRANSFER_ENCODING, CONNECTION, CONTENT_ENCODING, "Date", "Server", "Last-Modified",
+        "ETag", "Cache-Control", "Expires", "Location", "Keep-Alive", "Vary", "Accept-Ranges", "Content-Range", "Pragma",
+        "Set-Cookie", "Age", "Via", "WWW-Authenticate", "X-Content-Type-Options", "Strict-Transport-Security"
+    };
+
+    /** @return known instance if there is one, null otherwise */
+    public static String knownName(byte[] bytes, int ofs, int len) {
+        for (String name : KNOWN_NAMES) {
+            if (name.length() == len && equalsIgnoreCase(bytes, ofs, name)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    private static boolean equalsIgnoreCase(byte[] bytes, int ofs, String name) {
+        char c;
+        char n;
+
+        for (int i = 0; i < name.length(); i++) {
+            c = (char) (bytes[ofs + i] & 0xff);
+            n = name.charAt(i);
+            if (c != n && Character.toLowerCase(c) != Character.toLowerCase(n)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String knownName(String str) {
+        for (String name : KNOWN_NAMES) {
+            if (name.equalsIgnoreCase(str)) {
+                return name;
+            }
+        }
+        return str;
+    }
+
     public static Header parse(String line) throws ProtocolException {
         int colon;
         String name;
@@ -36,7 +78,7 @@ public class Header {
         if (name.isEmpty()) {
             throw new ProtocolException("empty name in header: " + line);
         }
-        return new Header(name, Scanner.substringTrimmed(line, colon + 1, line.length()));
+        return new Header(knownName(name), Scanner.substringTrimmed(line, colon + 1, line.length()));
     }
 
     //--
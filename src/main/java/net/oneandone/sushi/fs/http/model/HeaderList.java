@@ -38,25 +38,30 @@ public class HeaderList implements Iterable<Header> {
 
     public static HeaderList parse(AsciiInputStream src) throws IOException {
         HeaderList result;
-        String line;
+        Header header;
 
         result = new HeaderList();
         while (true) {
-            line = src.readLine();
-            if (line == null || line.isEmpty()) {
+            header = src.readHeader();
+            if (header == null) {
                 return result;
             }
-            if ((line.charAt(0) == ' ') || (line.charAt(0) == '\t')) {
-                throw new ProtocolException("header continuation is not supported: " + line);
-            }
-            result.add(Header.parse(line));
+            result.add(header);
         }
     }
 
     private final List<Header> headers;
 
+    /** first header with the respective name, for constant time lookup */
+    private Header contentLength;
+    private Header transferEncoding;
+    private Header connection;
+
     public HeaderList() {
         this.headers = new ArrayList<>();
+        this.contentLength = null;
+        this.transferEncoding = null;
+        this.connection = null;
     }
 
     public void addAll(HeaderList lst) {
@@ -67,6 +72,25 @@ public class HeaderList implements Iterable<Header> {
 
     public void add(Header header) {
         headers.add(header);
+        switch (slot(header.name)) {
+            case CONTENT_LENGTH:
+                if (contentLength == null) {
+                    contentLength = header;
+                }
+                break;
+            case TRANSFER_ENCODING:
+                if (transferEncoding == null) {
+                    transferEncoding = header;
+                }
+                break;
+            case CONNECTION:
+                if (connection == null) {
+                    connection = header;
+                }
+                break;
+            default:
+                break;
+        }
     }
 
     public void add(String name, String value) {
@@ -81,6 +105,16 @@ public class HeaderList implements Iterable<Header> {
     }
 
     public Header getFirst(String name) {
+        switch (slot(name)) {
+            case CONTENT_LENGTH:
+                return contentLength;
+            case TRANSFER_ENCODING:
+                return transferEncoding;
+            case CONNECTION:
+                return connection;
+            default:
+                break;
+        }
         for (Header header : this) {
             if (header.name.equalsIgnoreCase(name)) {
                 return header;
@@ -93,4 +127,30 @@ public class HeaderList implements Iterable<Header> {
         return headers.iterator();
     }
 
+    //--
+
+    private static final int OTHER = 0;
+    private static final int CONTENT_LENGTH = 1;
+    private static final int TRANSFER_ENCODING = 2;
+    private static final int CONNECTION = 3;
+
+    /** parsed names are usually the interned constants, so the identity checks succeed */
+    private static int slot(String name) {
+        if (name == Header.CONTENT_LENGTH) {
+            return CONTENT_LENGTH;
+        } else if (name == Header.TRANSFER_ENCODING) {
+            return TRANSFER_ENCODING;
+        } else if (name == Header.CONNECTION) {
+            return CONNECTION;
+        } else if (name.equalsIgnoreCase(Header.CONTENT_LENGTH)) {
+            return CONTENT_LENGTH;
+        } else if (name.equalsIgnoreCase(Header.TRANSFER_ENCODING)) {
+            return TRANSFER_ENCODING;
+        } else if (name.equalsIgnoreCase(Header.CONNECTION)) {
+            return CONNECTION;
+        } else {
+            return OTHER;
+        }
+    }
+
 }
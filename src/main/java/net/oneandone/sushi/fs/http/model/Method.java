@@ -17,10 +17,12 @@ package net.oneandone.sushi.fs.http.model;
 
 import net.oneandone.sushi.fs.FileNotFoundException;
 import net.oneandone.sushi.fs.http.HttpConnection;
+import net.oneandone.sushi.fs.http.HttpFilesystem;
 import net.oneandone.sushi.fs.http.HttpNode;
 import net.oneandone.sushi.fs.http.MovedPermanentlyException;
 import net.oneandone.sushi.fs.http.StatusException;
 import net.oneandone.sushi.fs.http.io.ChunkedOutputStream;
+import net.oneandone.sushi.fs.http.io.ContentCoding;
 import net.oneandone.sushi.xml.Builder;
 import net.oneandone.sushi.xml.Namespace;
 import net.oneandone.sushi.xml.Xml;
@@ -30,19 +32,43 @@ import org.w3c.dom.Element;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.List;
 
 public class Method {
     public static final Namespace DAV = Namespace.getNamespace("D", "DAV:");
     public static final String XML_PROP = "prop";
     public static final String XML_RESPONSE = "response";
+    public static final int DEPTH_INFINITY = Integer.MAX_VALUE;
 
     public static InputStream get(HttpNode resource) throws IOException {
-        return Request.streamResponse(resource, "GET", null, StatusCode.OK);
+        Request get;
+
+        get = new Request("GET", resource);
+        get.acceptEncoding();
+        return Request.streamResponse(resource, get, null, StatusCode.OK);
+    }
+
+    /**
+     * Sends a range request. Servers not supporting ranges answer with the complete content,
+     * check the status line of the result.
+     *
+     * @param length -1 for all bytes starting at offset
+     */
+    public static Request.ResponseStream get(HttpNode resource, long offset, long length) throws IOException {
+        Request get;
+
+        get = new Request("GET", resource);
+        get.addRequestHeader(Header.RANGE, "bytes=" + offset + "-" + (length < 0 ? "" : Long.toString(offset + length - 1)));
+        return Request.streamResponse(resource, get, null, StatusCode.OK, StatusCode.PARTIAL_CONTENT, StatusCode.RANGE_NOT_SATISFIABLE);
     }
 
     public static InputStream post(HttpNode resource, Body body) throws IOException {
-        return Request.streamResponse(resource, "POST", body, StatusCode.OK, StatusCode.CREATED);
+        Request post;
+
+        post = new Request("POST", resource);
+        post.acceptEncoding();
+        return Request.streamResponse(resource, post, post.compress(body), StatusCode.OK, StatusCode.CREATED);
     }
 
     public static String head(HttpNode resource, String header) throws IOException {
@@ -85,7 +111,7 @@ public class Method {
             case StatusCode.MOVED_PERMANENTLY:
                 throw new MovedPermanentlyException();
             case StatusCode.MULTI_STATUS:
-                lst = MultiStatus.fromResponse(resource.getWorld().getXml(), response.getBodyBytes());
+                lst = MultiStatus.fromResponse(response.getBodyBytes());
                 ms = MultiStatus.lookupOne(lst, property.getName());
                 if (ms.status != StatusCode.OK) {
                     throw new StatusException(resource, response.getHeaderList(), new StatusLine(StatusLine.HTTP_1_1, ms.status), null);
@@ -97,25 +123,34 @@ public class Method {
     }
 
     public static List<MultiStatus> propfind(HttpNode resource, Name name, int depth) throws IOException {
-        Xml xml;
-        Document document;
-        Builder builder;
+        return MultiStatus.fromResponse(propfindStream(resource, name, depth));
+    }
+
+    /**
+     * Streaming variant of propfind: returns the multistatus body while the connection is leased;
+     * closing the stream returns the connection to the pool.
+     */
+    public static Request.ResponseStream propfindStream(HttpNode resource, Name name, int depth) throws IOException {
+        return propfindStream(resource, depth, name);
+    }
+
+    /** @param depth 0, 1 or DEPTH_INFINITY */
+    public static Request.ResponseStream propfindStream(HttpNode resource, int depth, Name... names) throws IOException {
         Request propfind;
+        Body body;
         Response response;
 
-        xml = resource.getWorld().getXml();
-        builder = xml.getBuilder();
-        synchronized (builder) {
-            document = builder.createDocument("propfind", DAV);
-        }
-        name.addXml(Builder.element(document.getDocumentElement(), XML_PROP, DAV));
         propfind = new Request("PROPFIND", resource);
-        propfind.addRequestHeader("Depth", String.valueOf(depth));
-        response = propfind.request(Body.forDom(xml.getSerializer(), document));
-
+        propfind.addRequestHeader("Depth", depth == DEPTH_INFINITY ? "infinity" : String.valueOf(depth));
+        propfind.acceptEncoding();
+        body = propfindBody(resource, names);
+        propfind.bodyHeader(body);
+        response = propfind.responseHeader(propfind.open(body));
+        if (response.getStatusLine().code == StatusCode.MULTI_STATUS) {
+            return new Request.ResponseStream(propfind, response);
+        }
+        propfind.finish(response);
         switch (response.getStatusLine().code) {
-            case StatusCode.MULTI_STATUS:
-                return MultiStatus.fromResponse(resource.getWorld().getXml(), response.getBodyBytes());
             case StatusCode.BAD_REQUEST: // TODO
             case StatusCode.MOVED_PERMANENTLY:
                 throw new MovedPermanentlyException();
@@ -126,6 +161,21 @@ public class Method {
         }
     }
 
+    /** @return body asking for the specified properties */
+    public static Body propfindBody(HttpNode resource, Name... names) {
+        Xml xml;
+        Document document;
+        Element prop;
+
+        xml = resource.getWorld().getXml();
+        document = xml.getBuilder().createDocument("propfind", DAV);
+        prop = Builder.element(document.getDocumentElement(), XML_PROP, DAV);
+        for (Name name : names) {
+            name.addXml(prop);
+        }
+        return Body.forDom(xml.getSerializer(), document);
+    }
+
     public static void move(HttpNode source, HttpNode destination, boolean overwrite) throws IOException {
         Request move;
         Response response;
@@ -181,12 +231,18 @@ public class Method {
     /** See https://www.w3.org/Protocols/rfc2616/rfc2616-sec9.html#PUT */
     public static OutputStream put(HttpNode resource) throws IOException {
         Request put;
+        HttpFilesystem filesystem;
         HttpConnection connection;
+        OutputStream result;
 
         put = new Request("PUT", resource);
         put.addRequestHeader(Header.TRANSFER_ENCODING, HttpConnection.CHUNK_CODING);
+        filesystem = resource.getRoot().getFilesystem();
+        if (filesystem.getCompressRequests()) {
+            put.addRequestHeader(Header.CONTENT_ENCODING, ContentCoding.GZIP);
+        }
         connection = put.open(null);
-        return new ChunkedOutputStream(connection.getOutputStream()) {
+        result = new ChunkedOutputStream(filesystem.getChunkSize(), connection.getOutputStream()) {
             private boolean closed = false;
             @Override
             public void close() throws IOException {
@@ -205,6 +261,47 @@ public class Method {
                 }
             }
         };
+        return filesystem.getCompressRequests() ? filesystem.getContentCoding().encode(result) : result;
+    }
+
+    /**
+     * PUT with a fixed length body taken from src, starting at position. The bytes are transferred from the file to
+     * the socket without copying them into the heap if the connection supports this.
+     */
+    public static void put(HttpNode resource, FileChannel src, long position, long length) throws IOException {
+        Request put;
+        HttpConnection connection;
+        Response response;
+        int code;
+
+        put = new Request("PUT", resource);
+        put.addRequestHeader(Header.CONTENT_LENGTH, Long.toString(length));
+        connection = put.open(null);
+        try {
+            connection.transferFrom(src, position, length);
+        } catch (IOException e) {
+            try {
+                connection.close();
+                resource.getRoot().free(connection);
+            } catch (IOException e2) {
+                e.addSuppressed(e2);
+            }
+            throw e;
+        }
+        response = put.finish(connection);
+        code = response.getStatusLine().code;
+        if (code != StatusCode.OK && code != StatusCode.NO_CONTENT && code != StatusCode.CREATED) {
+            throw StatusException.forResponse(resource, response);
+        }
+    }
+
+    /** Streaming variant of patch; closing the stream returns the connection to the pool. */
+    public static InputStream patchStream(HttpNode resource, Body body) throws IOException {
+        Request patch;
+
+        patch = new Request("PATCH", resource);
+        patch.acceptEncoding();
+        return Request.streamResponse(resource, patch, body, StatusCode.OK, StatusCode.CREATED);
     }
 
     public static byte[] patch(HttpNode resource, Body body) throws IOException {
@@ -212,6 +309,7 @@ public class Method {
         Response response;
 
         patch = new Request("PATCH", resource);
+        patch.acceptEncoding();
         response = patch.request(body);
         if (response.getStatusLine().code != StatusCode.OK && response.getStatusLine().code != StatusCode.CREATED) {
             throw StatusException.forResponse(resource, response);
@@ -15,15 +15,16 @@
  */
 package net.oneandone.sushi.fs.http.model;
 
-import net.oneandone.sushi.xml.Builder;
 import net.oneandone.sushi.xml.ChildElements;
 import net.oneandone.sushi.xml.Dom;
+import net.oneandone.sushi.xml.ElementReader;
 import net.oneandone.sushi.xml.Xml;
+import net.oneandone.sushi.xml.XmlException;
 import org.w3c.dom.Element;
-import org.xml.sax.SAXException;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -31,30 +32,57 @@ public class MultiStatus {
     private static final String XML_STATUS = "status";
     private static final String XML_PROPSTAT = "propstat";
 
+    /** Receives the properties of one response element */
+    public interface Handler {
+        void response(String href, List<MultiStatus> properties) throws IOException;
+    }
+
+    /** @deprecated use fromResponse(byte[]), the xml argument is ignored */
+    @Deprecated
     public static List<MultiStatus> fromResponse(Xml xml, byte[] responseBody) throws IOException {
-        Builder builder;
-        Element root;
+        return fromResponse(responseBody);
+    }
+
+    public static List<MultiStatus> fromResponse(byte[] responseBody) throws IOException {
+        return fromResponse(new ByteArrayInputStream(responseBody));
+    }
+
+    /** Streams the response, only one response element is held in memory at a time. Closes src. */
+    public static List<MultiStatus> fromResponse(InputStream src) throws IOException {
         List<MultiStatus> result;
-        ChildElements iter;
 
-        try {
-            builder = xml.getBuilder();
-            synchronized (builder) {
-                root = builder.parse(new ByteArrayInputStream(responseBody)).getDocumentElement();
+        result = new ArrayList<>();
+        fromResponse(src, (href, properties) -> result.addAll(properties));
+        return result;
+    }
+
+    /** Passes each response element to the handler as soon as it is parsed. Closes src. */
+    public static void fromResponse(InputStream src, Handler handler) throws IOException {
+        Element response;
+        List<MultiStatus> properties;
+        String href;
+
+        try (ElementReader reader = new ElementReader(src, "multistatus/response", Method.DAV)) {
+            while (true) {
+                response = reader.next();
+                if (response == null) {
+                    break;
+                }
+                properties = new ArrayList<>();
+                href = fromXml(response, properties);
+                handler.response(href, properties);
+            }
+            if (reader.getRoot() == null || !"multistatus".equals(reader.getRoot().getLocalPart())
+                    || !Method.DAV.hasUri(reader.getRoot().getNamespaceURI())) {
+                throw new ProtocolException("multistatus expected, got " + reader.getRoot());
             }
-        } catch (SAXException e) {
+        } catch (XmlException e) {
             throw new IOException(e.getMessage(), e);
         }
-        Dom.require(root, "multistatus", Method.DAV);
-        result = new ArrayList<>();
-        iter = Method.DAV.childElements(root, Method.XML_RESPONSE);
-        while (iter.hasNext()) {
-            fromXml(iter.next(), result);
-        }
-        return result;
     }
 
-    private static void fromXml(Element response, List<MultiStatus> result) throws IOException {
+    /** @return href */
+    private static String fromXml(Element response, List<MultiStatus> result) throws IOException {
         Element href;
         String str;
         ChildElements iter;
@@ -81,6 +109,7 @@ public class MultiStatus {
                 result.add(new MultiStatus(str, Property.fromXml(propIter.next()), status));
             }
         }
+        return str;
     }
 
     //--
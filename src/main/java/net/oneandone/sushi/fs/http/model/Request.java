@@ -20,9 +20,12 @@ import net.oneandone.sushi.fs.http.HttpConnection;
 import net.oneandone.sushi.fs.http.HttpNode;
 import net.oneandone.sushi.fs.http.HttpRoot;
 import net.oneandone.sushi.fs.http.StatusException;
+import net.oneandone.sushi.fs.http.io.ContentCoding;
 
+import java.io.ByteArrayInputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.UUID;
 
 public class Request {
@@ -48,6 +51,14 @@ public class Request {
             super.close();
         }
 
+        /** Closes the connection instead of reading the rest of the response. */
+        public void abort() throws IOException {
+            if (!freed) {
+                freed = true;
+                request.abort(response);
+            }
+        }
+
         public HeaderList getHeaderList() {
             return response.getHeaderList();
         }
@@ -63,10 +74,18 @@ public class Request {
      * @param success may be null to accept all response codes
      */
     public static ResponseStream streamResponse(HttpNode resource, String method, Body body, int... success) throws IOException {
-        Request request;
+        return streamResponse(resource, new Request(method, resource), body, success);
+    }
+
+    /**
+     * Variant for requests with additional headers.
+     *
+     * @param body may be null
+     * @param success may be null to accept all response codes
+     */
+    public static ResponseStream streamResponse(HttpNode resource, Request request, Body body, int... success) throws IOException {
         Response response;
 
-        request = new Request(method, resource);
         request.bodyHeader(body);
         response = request.responseHeader(request.open(body));
         if (success == null || contains(success, response.getStatusLine().code)) {
@@ -92,6 +111,7 @@ public class Request {
     private final String method;
     private final HeaderList headerList;
     private final String uri;
+    private boolean decode;
 
     public Request(String method, HttpNode resource) {
         this(resource.getRoot(), resource.allHeaders(), method, resource.getRequestPath());
@@ -102,16 +122,44 @@ public class Request {
         this.headerList = headers;
         this.method = method;
         this.uri = uri;
+        this.decode = false;
     }
 
     public String getUri() {
         return uri;
     }
 
+    public String getMethod() {
+        return method;
+    }
+
+    public HeaderList getHeaderList() {
+        return headerList;
+    }
+
     public void addRequestHeader(String name, String value) {
         headerList.add(name, value);
     }
 
+    /** Asks for a compressed response if enabled for the filesystem; the response body is decoded transparently */
+    public void acceptEncoding() {
+        if (root.getFilesystem().getAcceptEncoding()) {
+            headerList.add(Header.ACCEPT_ENCODING, ContentCoding.ACCEPT);
+            decode = true;
+        }
+    }
+
+    /** @return body compressed if enabled for the filesystem, the unmodified body otherwise */
+    public Body compress(Body body) throws IOException {
+        byte[] bytes;
+
+        if (body == null || body.encoding != null || !root.getFilesystem().getCompressRequests()) {
+            return body;
+        }
+        bytes = root.getFilesystem().getContentCoding().encode(root.getFilesystem().getWorld().getBuffer().readBytes(body.content));
+        return new Body(body.type, new Header(Header.CONTENT_ENCODING, ContentCoding.GZIP), bytes.length, new ByteArrayInputStream(bytes), false);
+    }
+
     public void bodyHeader(Body body) {
         Oauth oauth;
 
@@ -171,6 +219,9 @@ public class Request {
             try {
                 if (hasBody(response)) {
                     connection.receiveResponseBody(response);
+                    if (decode) {
+                        decode(response);
+                    }
                 }
             } catch (IOException e) {
                 try {
@@ -186,14 +237,17 @@ public class Request {
     }
 
     public Response finish(HttpConnection connection) throws IOException {
-        Response response;
+        return finish(responseHeader(connection));
+    }
+
+    /** Reads the response body into memory and returns the connection to the pool */
+    public Response finish(Response response) throws IOException {
         Body body;
 
-        response = responseHeader(connection);
         try {
             body = response.getBody();
             if (body != null) {
-                response.setBodyBytes(connection.getBuffer().readBytes(body.content));
+                response.setBodyBytes(response.connection.getBuffer().readBytes(body.content));
             }
         } finally {
             free(response);
@@ -201,6 +255,29 @@ public class Request {
         return response;
     }
 
+    //-- pipelining: the caller manages the connection
+
+    /** Sends this request; bodyHeader has to be called before */
+    public void send(HttpConnection connection, Body body) throws IOException {
+        connection.sendRequest(method, uri, headerList, body);
+    }
+
+    /** Receives the response for this request including the body bytes, the connection is not returned to the pool */
+    public Response receive(HttpConnection connection) throws IOException {
+        Response response;
+
+        do {
+            response = connection.receiveResponseHeader();
+            if (hasBody(response)) {
+                connection.receiveResponseBody(response);
+                response.setBodyBytes(connection.getBuffer().readBytes(response.getBody().content));
+            }
+        } while (response.getStatusLine().code < StatusCode.OK);
+        return response;
+    }
+
+    //--
+
     public Response request() throws IOException {
         return request(null);
     }
@@ -219,6 +296,28 @@ public class Request {
         root.free(response.connection);
     }
 
+    /** Like free, but does not read the rest of the response body; the connection is closed instead */
+    public void abort(Response response) throws IOException {
+        try {
+            response.connection.close();
+        } finally {
+            root.free(response.connection);
+        }
+    }
+
+    private void decode(Response response) {
+        Body body;
+        InputStream decoded;
+
+        body = response.getBody();
+        if (body.encoding != null) {
+            decoded = root.getFilesystem().getContentCoding().decode(body.encoding.value, body.content);
+            if (decoded != null) {
+                response.setBody(new Body(body.type, null, -1, decoded, body.chunked));
+            }
+        }
+    }
+
     /** https://www.w3.org/Protocols/rfc2616/rfc2616-sec4.html#sec4.3 */
     private boolean hasBody(Response response) {
         int status;
@@ -24,6 +24,7 @@ public class StatusCode {
     public static final int CREATED = 201;
     public static final int NO_CONTENT = 204;
     public static final int RESET_CONTENT = 205;
+    public static final int PARTIAL_CONTENT = 206;
     public static final int MULTI_STATUS = 207;
 
     public static final int MOVED_PERMANENTLY = 301;
@@ -31,9 +32,13 @@ public class StatusCode {
     public static final int NOT_MODIFIED = 304;
 
     public static final int BAD_REQUEST = 400;
+    public static final int FORBIDDEN = 403;
     public static final int NOT_FOUND = 404;
     public static final int METHOD_NOT_ALLOWED = 405;
     public static final int GONE = 410;
+    public static final int RANGE_NOT_SATISFIABLE = 416;
+
+    public static final int NOT_IMPLEMENTED = 501;
 
     private StatusCode() {
     }
@@ -33,8 +33,11 @@ public class StatusLine {
         if (space < 0) {
             space = str.length();
         }
+        while (space > between && Scanner.isWhitespace(str.charAt(space - 1))) {
+            space--;
+        }
         try {
-            code = Integer.parseInt(Scanner.substringTrimmed(str, between, space));
+            code = Integer.parseInt(str, between, space, 10);
         } catch (NumberFormatException e) {
             throw new ProtocolException("status line contains invalid status code: " + str);
         }
@@ -0,0 +1,360 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.memory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Immutable file content. Data is split into blocks of at most SIZE bytes; a published block is never modified, so
+ * blocks are shared between files by copyFile and by appending output streams. Blocks are heap or direct buffers.
+ */
+final class Blocks {
+    public static final int SIZE = 64 * 1024;
+
+    public static final Blocks EMPTY = new Blocks(new ByteBuffer[0], 0);
+
+    /** all blocks are full except the last one; position is always 0 */
+    private final ByteBuffer[] blocks;
+    public final long length;
+
+    private Blocks(ByteBuffer[] blocks, long length) {
+        this.blocks = blocks;
+        this.length = length;
+    }
+
+    /** @return read-only views of the blocks, without copying data */
+    public ByteBuffer[] buffers() {
+        ByteBuffer[] result;
+
+        result = new ByteBuffer[blocks.length];
+        for (int i = 0; i < blocks.length; i++) {
+            result[i] = blocks[i].asReadOnlyBuffer();
+        }
+        return result;
+    }
+
+    public boolean isDirect() {
+        for (ByteBuffer block : blocks) {
+            if (!block.isDirect()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return blocks with the same content in direct buffers; direct blocks are shared */
+    public Blocks toDirect() {
+        ByteBuffer[] result;
+        ByteBuffer block;
+
+        if (isDirect()) {
+            return this;
+        }
+        result = new ByteBuffer[blocks.length];
+        for (int i = 0; i < blocks.length; i++) {
+            block = blocks[i];
+            if (block.isDirect()) {
+                result[i] = block;
+            } else {
+                result[i] = ByteBuffer.allocateDirect(block.limit());
+                result[i].put(block.duplicate());
+                result[i].flip();
+            }
+        }
+        return new Blocks(result, length);
+    }
+
+    public byte[] toArray() throws IOException {
+        byte[] result;
+        int ofs;
+
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("file too large for byte array: " + length);
+        }
+        result = new byte[(int) length];
+        ofs = 0;
+        for (ByteBuffer block : blocks) {
+            block.duplicate().get(result, ofs, block.limit());
+            ofs += block.limit();
+        }
+        return result;
+    }
+
+    /** @return number of bytes written */
+    public long writeTo(OutputStream dest, long skip) throws IOException {
+        long result;
+        byte[] transfer;
+        ByteBuffer src;
+
+        result = 0;
+        transfer = null;
+        for (ByteBuffer block : blocks) {
+            if (skip >= block.limit()) {
+                skip -= block.limit();
+            } else {
+                src = block.duplicate();
+                src.position((int) skip);
+                skip = 0;
+                result += src.remaining();
+                transfer = write(src, dest, transfer);
+            }
+        }
+        return result;
+    }
+
+    /** Writes the remaining bytes of src; heap buffers are written without copying */
+    private static byte[] write(ByteBuffer src, OutputStream dest, byte[] transfer) throws IOException {
+        int step;
+
+        if (src.hasArray()) {
+            dest.write(src.array(), src.arrayOffset() + src.position(), src.remaining());
+            src.position(src.limit());
+        } else {
+            if (transfer == null) {
+                transfer = new byte[8192];
+            }
+            while (src.hasRemaining()) {
+                step = Math.min(transfer.length, src.remaining());
+                src.get(transfer, 0, step);
+                dest.write(transfer, 0, step);
+            }
+        }
+        return transfer;
+    }
+
+    public InputStream newInputStream() {
+        ByteBuffer[] views;
+
+        views = new ByteBuffer[blocks.length];
+        for (int i = 0; i < blocks.length; i++) {
+            views[i] = blocks[i].duplicate();
+        }
+        return new Input(views);
+    }
+
+    /** Closing publishes the data written so far; see done() */
+    public static class Output extends OutputStream {
+        private ByteBuffer[] full;
+        private int fullCount;
+        private byte[] current;
+        private int count;
+
+        Output() {
+            this(EMPTY);
+        }
+
+        /** Appends to existing content; shares its full blocks and copies at most one partial block */
+        Output(Blocks start) {
+            ByteBuffer block;
+
+            this.full = new ByteBuffer[Math.max(4, start.blocks.length)];
+            this.fullCount = 0;
+            this.current = new byte[256];
+            this.count = 0;
+            for (int i = 0; i < start.blocks.length; i++) {
+                block = start.blocks[i];
+                if (block.limit() == SIZE) {
+                    full[fullCount++] = block;
+                } else {
+                    // only the last block may be partial
+                    current = new byte[Math.max(256, Math.min(SIZE, block.limit() * 2))];
+                    block.duplicate().get(current, 0, block.limit());
+                    count = block.limit();
+                }
+            }
+        }
+
+        @Override
+        public void write(int b) {
+            ensureOpen();
+            if (count == current.length) {
+                grow();
+            }
+            current[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            int step;
+
+            ensureOpen();
+            while (len > 0) {
+                if (count == current.length) {
+                    grow();
+                }
+                step = Math.min(len, current.length - count);
+                System.arraycopy(b, off, current, count, step);
+                count += step;
+                off += step;
+                len -= step;
+            }
+        }
+
+        /** Doubles the current block until it reaches SIZE, then starts a new one. */
+        private void grow() {
+            if (current.length < SIZE) {
+                current = Arrays.copyOf(current, Math.min(SIZE, current.length * 2));
+            } else {
+                if (fullCount == full.length) {
+                    full = Arrays.copyOf(full, full.length * 2);
+                }
+                full[fullCount++] = ByteBuffer.wrap(current);
+                current = new byte[SIZE];
+                count = 0;
+            }
+        }
+
+        public boolean isDone() {
+            return current == null;
+        }
+
+        private void ensureOpen() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+        }
+
+        public long size() {
+            return (long) fullCount * SIZE + count;
+        }
+
+        /** @return immutable content; this stream must not be used afterwards */
+        public Blocks done() {
+            ByteBuffer[] result;
+            long length;
+
+            ensureOpen();
+            length = size();
+            if (count == 0) {
+                result = Arrays.copyOf(full, fullCount);
+            } else {
+                result = Arrays.copyOf(full, fullCount + 1);
+                result[fullCount] = ByteBuffer.wrap(count == current.length ? current : Arrays.copyOf(current, count));
+            }
+            full = null;
+            current = null;
+            return new Blocks(result, length);
+        }
+    }
+
+    /** Reads from private views of the shared blocks */
+    private static class Input extends InputStream {
+        private final ByteBuffer[] views;
+        private int idx;
+        private byte[] transfer;
+        private boolean closed;
+
+        Input(ByteBuffer[] views) {
+            this.views = views;
+            this.idx = 0;
+            this.transfer = null;
+            this.closed = false;
+        }
+
+        /** @return null at eof */
+        private ByteBuffer current() {
+            ensureOpen();
+            while (idx < views.length) {
+                if (views[idx].hasRemaining()) {
+                    return views[idx];
+                }
+                idx++;
+            }
+            return null;
+        }
+
+        @Override
+        public int read() {
+            ByteBuffer view;
+
+            view = current();
+            return view == null ? -1 : view.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            ByteBuffer view;
+
+            if (len == 0) {
+                ensureOpen();
+                return 0;
+            }
+            view = current();
+            if (view == null) {
+                return -1;
+            }
+            len = Math.min(len, view.remaining());
+            view.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            ByteBuffer view;
+            long result;
+            int step;
+
+            result = 0;
+            while (n > 0) {
+                view = current();
+                if (view == null) {
+                    break;
+                }
+                step = (int) Math.min(n, view.remaining());
+                view.position(view.position() + step);
+                n -= step;
+                result += step;
+            }
+            return result;
+        }
+
+        @Override
+        public int available() {
+            ByteBuffer view;
+
+            view = current();
+            return view == null ? 0 : view.remaining();
+        }
+
+        @Override
+        public long transferTo(OutputStream dest) throws IOException {
+            ByteBuffer view;
+            long result;
+
+            result = 0;
+            while ((view = current()) != null) {
+                result += view.remaining();
+                transfer = write(view, dest, transfer);
+            }
+            return result;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        private void ensureOpen() {
+            if (closed) {
+                throw new IllegalStateException();
+            }
+        }
+    }
+}
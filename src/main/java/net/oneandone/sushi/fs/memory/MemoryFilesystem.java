@@ -26,13 +26,28 @@ import java.util.WeakHashMap;
 public class MemoryFilesystem extends Filesystem {
     private final WeakHashMap<Integer, MemoryRoot> roots;
 
-    private int maxInMemorySize;
+    private volatile int maxInMemorySize;
+
+    /** resident bytes of all roots; exceeding it spills least recently used files to disk */
+    private volatile long memoryBudget;
+
+    /** store file content in direct buffers, outside the java heap */
+    private volatile boolean offHeap;
+
+    private final Storage storage;
 
     public MemoryFilesystem(World world, String name) {
         super(world, new Features(true, false, false, false, false, false, false), name);
 
         this.roots = new WeakHashMap<>();
         this.maxInMemorySize = 32 * 1024;
+        this.memoryBudget = Long.MAX_VALUE;
+        this.offHeap = false;
+        this.storage = new Storage(this);
+    }
+
+    Storage getStorage() {
+        return storage;
     }
 
     public int getMaxInMemorySize() {
@@ -43,6 +58,34 @@ public class MemoryFilesystem extends Filesystem {
         this.maxInMemorySize = maxInMemorySize;
     }
 
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /** Applies to subsequent writes; files already resident are spilled with the next write. */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public boolean getOffHeap() {
+        return offHeap;
+    }
+
+    /** Applies to subsequent writes */
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    /** @return bytes of file content kept in memory, on or off heap; shared content is counted for every file */
+    public long getResidentBytes() {
+        return storage.getResidentBytes();
+    }
+
+    /** @return bytes of file content kept in temp files */
+    public long getSpilledBytes() {
+        return storage.getSpilledBytes();
+    }
+
     @Override
     public MemoryNode node(URI uri, Object extra) throws NodeInstantiationException {
         MemoryRoot result;
@@ -59,7 +102,7 @@ public class MemoryFilesystem extends Filesystem {
         return result.node(getCheckedPath(uri), null);
     }
 
-    public MemoryRoot root(int id) {
+    public synchronized MemoryRoot root(int id) {
         MemoryRoot root;
 
         root = roots.get(id);
@@ -70,7 +113,7 @@ public class MemoryFilesystem extends Filesystem {
         return root;
     }
 
-    public MemoryRoot root() {
+    public synchronized MemoryRoot root() {
         MemoryRoot root;
 
         for (int id = 0; true; id++) {
@@ -15,11 +15,11 @@
  */
 package net.oneandone.sushi.fs.memory;
 
+import net.oneandone.sushi.fs.CopyException;
 import net.oneandone.sushi.fs.CopyFileFromException;
 import net.oneandone.sushi.fs.CopyFileToException;
 import net.oneandone.sushi.fs.DeleteException;
 import net.oneandone.sushi.fs.DirectoryNotFoundException;
-import net.oneandone.sushi.fs.ExistsException;
 import net.oneandone.sushi.fs.FileNotFoundException;
 import net.oneandone.sushi.fs.GetLastModifiedException;
 import net.oneandone.sushi.fs.ListException;
@@ -31,19 +31,21 @@ import net.oneandone.sushi.fs.Node;
 import net.oneandone.sushi.fs.NodeNotFoundException;
 import net.oneandone.sushi.fs.SetLastModifiedException;
 import net.oneandone.sushi.fs.SizeException;
-import net.oneandone.sushi.io.CheckedByteArrayOutputStream;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.file.attribute.GroupPrincipal;
 import java.nio.file.attribute.UserPrincipal;
 import java.util.List;
 
 /**
- * You'll normally use World.memoryNode() to create instances
+ * You'll normally use World.memoryNode() to create instances. Nodes are handles: state is kept in the root, so any
+ * number of instances for the same path can be used concurrently.
  */
 public class MemoryNode extends Node<MemoryNode> {
     /**
@@ -57,20 +59,17 @@ public class MemoryNode extends Node<MemoryNode> {
     private final String path;
 
     /**
-     * never null
+     * Do not call - use MemoryRoot.node instead.
      */
-    private Type type;
-
-    private long lastModified;
-
-    /**
-     * Do not call - use create instead.
-     */
-    public MemoryNode(MemoryRoot root, String path, Type type) {
+    public MemoryNode(MemoryRoot root, String path) {
         this.root = root;
         this.path = path;
-        this.type = type;
-        this.lastModified = 0;
+    }
+
+    /** @deprecated use MemoryRoot.node; the type argument is ignored, the type is kept in the root */
+    @Deprecated
+    public MemoryNode(MemoryRoot root, String path, Type type) {
+        this(root, path);
     }
 
     @Override
@@ -88,22 +87,22 @@ public class MemoryNode extends Node<MemoryNode> {
     }
 
     public Type getType() {
-        return type;
+        return root.type(path);
     }
 
     @Override
     public boolean exists() {
-        return type != Type.NONE;
+        return root.lookup(path) != null;
     }
 
     @Override
     public boolean isFile() {
-        return type == Type.FILE;
+        return getType() == Type.FILE;
     }
 
     @Override
     public boolean isDirectory() {
-        return type == Type.DIRECTORY;
+        return getType() == Type.DIRECTORY;
     }
 
     @Override
@@ -121,15 +120,24 @@ public class MemoryNode extends Node<MemoryNode> {
 
     @Override
     public long getLastModified() throws GetLastModifiedException {
-        if (type == Type.NONE) {
+        MemoryRoot.Entry entry;
+
+        entry = root.lookup(path);
+        if (entry == null) {
             throw new GetLastModifiedException(this, null);
         }
-        return lastModified;
+        return entry.lastModified;
     }
 
     @Override
     public void setLastModified(long millis) throws SetLastModifiedException {
-        lastModified = millis;
+        MemoryRoot.Entry entry;
+
+        entry = root.lookup(path);
+        if (entry == null) {
+            throw new SetLastModifiedException(this);
+        }
+        entry.lastModified = millis;
     }
 
     @Override
@@ -164,17 +172,9 @@ public class MemoryNode extends Node<MemoryNode> {
 
     @Override
     public MemoryNode mkdir() throws MkdirException {
-        boolean parentDir;
-
-        if (type != Type.NONE) {
+        if (path.isEmpty() || !root.mkdir(path)) {
             throw new MkdirException(this);
         }
-        parentDir = getParent().isDirectory();
-        if (!parentDir) {
-            throw new MkdirException(this);
-        }
-        type = Type.DIRECTORY;
-        lastModified = System.currentTimeMillis();
         return this;
     }
 
@@ -190,49 +190,37 @@ public class MemoryNode extends Node<MemoryNode> {
 
     @Override
     public MemoryNode deleteFile() throws DeleteException, FileNotFoundException {
-        try {
-            checkFile();
-        } catch (ExistsException e) {
-            throw new DeleteException(this, e);
+        if (!root.delete(path, Type.FILE, false)) {
+            throw new FileNotFoundException(this);
         }
-        root.free(this);
-        type = Type.NONE;
         return this;
     }
 
     @Override
     public MemoryNode deleteDirectory() throws DeleteException, DirectoryNotFoundException {
-        if (type != Type.DIRECTORY) {
-            throw new DirectoryNotFoundException(this);
+        if (path.isEmpty()) {
+            throw new DeleteException(this, "cannot delete root");
         }
-        if (root.list(path).size() > 0) {
-            throw new DeleteException(this, "directory is not empty");
+        if (!root.delete(path, Type.DIRECTORY, false)) {
+            throw new DirectoryNotFoundException(this);
         }
-        type = Type.NONE;
         return this;
     }
 
     @Override
     public MemoryNode deleteTree() throws DeleteException, NodeNotFoundException {
-        if (type == Type.NONE) {
-            throw new NodeNotFoundException(this);
+        if (path.isEmpty()) {
+            throw new DeleteException(this, "cannot delete root");
         }
-        if (type == Type.DIRECTORY) {
-            try {
-                for (MemoryNode obj : list()) {
-                    obj.deleteTree();
-                }
-            } catch (ListException | DirectoryNotFoundException e) {
-                throw new DeleteException(this, e);
-            }
+        if (!root.delete(path, null, true)) {
+            throw new NodeNotFoundException(this);
         }
-        type = Type.NONE;
         return this;
     }
 
     @Override
     public List<MemoryNode> list() throws ListException, DirectoryNotFoundException {
-        switch (type) {
+        switch (getType()) {
             case NONE:
                 throw new DirectoryNotFoundException(this);
             case FILE:
@@ -245,26 +233,70 @@ public class MemoryNode extends Node<MemoryNode> {
     }
 
     public byte[] readBytes() throws IOException {
-        if (type != Type.FILE) {
-            throw new FileNotFoundException(this);
-        }
         return root.readBytes(path);
     }
 
+    /** Content that fits into a single block is returned without copying. */
     @Override
-    public InputStream newInputStream() throws FileNotFoundException, NewInputStreamException {
-        if (type != Type.FILE) {
-            throw new FileNotFoundException(this);
+    public ByteBuffer map() throws IOException {
+        Blocks blocks;
+        ByteBuffer[] buffers;
+
+        blocks = root.blocks(path);
+        if (blocks != null) {
+            buffers = blocks.buffers();
+            if (buffers.length == 1) {
+                return buffers[0];
+            }
         }
+        return super.map();
+    }
+
+    @Override
+    public InputStream newInputStream() throws FileNotFoundException, NewInputStreamException {
         try {
             return root.open(path);
+        } catch (FileNotFoundException e) {
+            throw e;
         } catch (IOException e) {
             throw new NewInputStreamException(this, e);
         }
     }
 
+    /** Writes straight from the shared content blocks. */
     public long copyFileTo(OutputStream dest, long skip) throws CopyFileToException, FileNotFoundException {
-        return copyFileToImpl(dest, skip);
+        try {
+            return root.copyTo(path, dest, skip);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new CopyFileToException(this, e);
+        }
+    }
+
+    /** Memory destinations share the content blocks of this file, nothing is copied. */
+    @Override
+    public Node copyFile(Node dest) throws FileNotFoundException, CopyException {
+        MemoryNode to;
+        Blocks blocks;
+
+        if (!(dest instanceof MemoryNode)) {
+            return super.copyFile(dest);
+        }
+        to = (MemoryNode) dest;
+        blocks = root.blocks(path);
+        if (blocks == null) {
+            return super.copyFile(dest);
+        }
+        try {
+            if (to.isDirectory()) {
+                throw new NewDirectoryOutputStreamException(to);
+            }
+            to.root.store(to.path, blocks);
+        } catch (IOException e) {
+            throw new CopyException(this, dest, e);
+        }
+        return this;
     }
 
     public void copyFileFrom(InputStream dest) throws FileNotFoundException, CopyFileFromException {
@@ -273,26 +305,38 @@ public class MemoryNode extends Node<MemoryNode> {
 
     @Override
     public OutputStream newOutputStream(boolean append) throws NewOutputStreamException {
-        byte[] add;
+        Blocks existing;
+        Blocks.Output content;
 
         try {
-            switch (type) {
+            switch (getType()) {
                 case DIRECTORY:
                     throw new NewDirectoryOutputStreamException(this);
                 case FILE:
-                    add = append ? readBytes() : null;
+                    existing = append ? root.blocks(path) : Blocks.EMPTY;
                     break;
                 default:
-                    add = null;
+                    existing = Blocks.EMPTY;
             }
             getParent().checkDirectory();
-            return new CheckedByteArrayOutputStream(add) {
+            if (existing == null) {
+                // content was moved to disk
+                content = new Blocks.Output();
+                root.copyTo(path, content, 0);
+            } else {
+                content = new Blocks.Output(existing);
+            }
+            return new FilterOutputStream(content) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
                 @Override
                 public void close() throws IOException {
-                    type = Type.FILE;
-                    root.store(path, this.buf, this.count);
-                    super.close();
-                    lastModified = System.currentTimeMillis();
+                    if (!content.isDone()) {
+                        root.store(path, content.done());
+                    }
                 }
             };
         } catch (NewOutputStreamException e) {
@@ -21,28 +21,54 @@ import net.oneandone.sushi.fs.Filesystem;
 import net.oneandone.sushi.fs.Root;
 import net.oneandone.sushi.fs.SizeException;
 import net.oneandone.sushi.fs.file.FileNode;
-import net.oneandone.sushi.io.CheckedByteArrayInputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Directory tree with a concurrent child map per directory; lookups walk the path and never create entries.
+ * Structural changes of a directory synchronize on its entry.
+ */
 public class MemoryRoot implements Root<MemoryNode> {
+    /** File or directory */
+    static final class Entry {
+        public final Type type;
+        /** null for files */
+        public final Map<String, Entry> children;
+        public volatile long lastModified;
+        /** Blocks or FileNode; null for directories */
+        public volatile Object content;
+        /** true if this entry was removed from the tree; guarded by this */
+        private boolean deleted;
+
+        Entry(Type type, long lastModified) {
+            this.type = type;
+            this.children = type == Type.DIRECTORY ? new ConcurrentHashMap<>() : null;
+            this.lastModified = lastModified;
+            this.content = null;
+            this.deleted = false;
+        }
+
+        /** Call with the monitor held */
+        boolean isDeleted() {
+            return deleted;
+        }
+    }
+
     public final MemoryFilesystem filesystem;
     public final int id;
-    private final Map<String, MemoryNode> nodes;
-    private final Map<String, Object> store;
+    private final Entry top;
 
     public MemoryRoot(MemoryFilesystem filesystem, int id) {
         this.filesystem = filesystem;
         this.id = id;
-        this.nodes = new HashMap<>();
-        this.store = new HashMap<>();
-        add(new MemoryNode(this, "", Type.DIRECTORY));
+        this.top = new Entry(Type.DIRECTORY, 0);
+        filesystem.getStorage().register(this, top);
     }
 
     public MemoryFilesystem getFilesystem() {
@@ -54,104 +80,289 @@ public class MemoryRoot implements Root<MemoryNode> {
     }
 
     public MemoryNode node(String path, String encodedQuery) {
-        MemoryNode node;
-
         if (encodedQuery != null) {
             throw new IllegalArgumentException(encodedQuery);
         }
-        node = nodes.get(path);
-        if (node == null) {
-            node = new MemoryNode(this, path, Type.NONE);
-            nodes.put(node.getPath(), node);
+        return new MemoryNode(this, path);
+    }
+
+    /** @return null if not found */
+    Entry lookup(String path) {
+        Entry current;
+        int start;
+        int end;
+
+        current = top;
+        if (path.isEmpty()) {
+            return current;
         }
-        return node;
+        start = 0;
+        while (current != null) {
+            if (current.children == null) {
+                return null;
+            }
+            end = path.indexOf(Filesystem.SEPARATOR_CHAR, start);
+            if (end == -1) {
+                return current.children.get(path.substring(start));
+            }
+            current = current.children.get(path.substring(start, end));
+            start = end + 1;
+        }
+        return null;
     }
 
-    public void add(MemoryNode node) {
-        nodes.put(node.getPath(), node);
+    Type type(String path) {
+        Entry entry;
+
+        entry = lookup(path);
+        return entry == null ? Type.NONE : entry.type;
     }
 
-    public void free(MemoryNode node) throws FileNotFoundException, DeleteException {
-        Object previous;
+    public List<MemoryNode> list(String path) {
+        Entry entry;
+        List<MemoryNode> result;
+        String prefix;
 
-        previous = store.remove(node.getPath());
-        if (previous instanceof FileNode) {
-            ((FileNode) previous).deleteFile();
+        result = new ArrayList<>();
+        entry = lookup(path);
+        if (entry != null && entry.children != null) {
+            prefix = path.isEmpty() ? "" : path + Filesystem.SEPARATOR_CHAR;
+            for (String name : entry.children.keySet()) {
+                result.add(new MemoryNode(this, prefix + name));
+            }
         }
+        return result;
+    }
+
+    /** @return false if the parent is not a directory or the node already exists */
+    boolean mkdir(String path) {
+        Entry parent;
+
+        parent = lookup(parent(path));
+        if (parent == null || parent.children == null) {
+            return false;
+        }
+        synchronized (parent) {
+            return !parent.deleted && parent.children.putIfAbsent(name(path), new Entry(Type.DIRECTORY, System.currentTimeMillis())) == null;
+        }
+    }
+
+    /** @return false if not found or not of the expected type */
+    boolean delete(String path, Type expected, boolean tree) throws DeleteException {
+        Entry parent;
+        Entry entry;
+
+        parent = lookup(parent(path));
+        if (parent == null || parent.children == null) {
+            return false;
+        }
+        entry = parent.children.get(name(path));
+        if (entry == null || (expected != null && entry.type != expected)) {
+            return false;
+        }
+        if (entry.type == Type.DIRECTORY && !tree) {
+            synchronized (entry) {
+                if (!entry.children.isEmpty()) {
+                    throw new DeleteException(new MemoryNode(this, path), "directory is not empty");
+                }
+                entry.deleted = true;
+            }
+        }
+        if (!parent.children.remove(name(path), entry)) {
+            return false;
+        }
+        free(path, entry);
+        return true;
+    }
+
+    private void free(String path, Entry entry) throws DeleteException {
+        Object content;
+
+        synchronized (entry) {
+            entry.deleted = true;
+            content = entry.content;
+            entry.content = null;
+        }
+        if (entry.children != null) {
+            for (Map.Entry<String, Entry> child : entry.children.entrySet()) {
+                free(path + Filesystem.SEPARATOR_CHAR + child.getKey(), child.getValue());
+            }
+            entry.children.clear();
+        } else {
+            try {
+                filesystem.getStorage().release(entry, content);
+            } catch (IOException e) {
+                throw new DeleteException(new MemoryNode(this, path), e);
+            }
+        }
+    }
+
+    /** Releases all content below entry; used for roots that have been garbage collected */
+    static void releaseTree(Storage storage, Entry entry) throws IOException {
+        Object content;
+
+        synchronized (entry) {
+            entry.deleted = true;
+            content = entry.content;
+            entry.content = null;
+        }
+        if (entry.children != null) {
+            for (Entry child : entry.children.values()) {
+                releaseTree(storage, child);
+            }
+        } else {
+            storage.release(entry, content);
+        }
+    }
+
+    private static String parent(String path) {
+        int idx;
+
+        idx = path.lastIndexOf(Filesystem.SEPARATOR_CHAR);
+        return idx == -1 ? "" : path.substring(0, idx);
+    }
+
+    private static String name(String path) {
+        return path.substring(path.lastIndexOf(Filesystem.SEPARATOR_CHAR) + 1);
+    }
+
+    //-- file content
+
+    /** @return null if path is not a file */
+    private Object content(String path) {
+        Entry entry;
+
+        Object result;
+
+        entry = lookup(path);
+        if (entry == null || entry.type != Type.FILE) {
+            return null;
+        }
+        result = entry.content;
+        if (result instanceof Blocks) {
+            filesystem.getStorage().touch(entry);
+        }
+        return result;
     }
 
     public long length(String path) throws SizeException {
         Object obj;
 
-        obj = store.get(path);
+        obj = content(path);
         if (obj instanceof FileNode) {
             return ((FileNode) obj).size();
+        } else if (obj == null) {
+            throw new SizeException(new MemoryNode(this, path), new IOException("file expected"));
         } else {
-            return ((byte[]) obj).length;
+            return ((Blocks) obj).length;
         }
     }
 
-    public List<MemoryNode> list(String path) {
-        String child;
-        int idx;
-        List<MemoryNode> result;
+    /** @return null if the file is kept on disk */
+    Blocks blocks(String path) throws FileNotFoundException {
+        Object obj;
 
-        result = new ArrayList<>();
-        for (MemoryNode node : nodes.values()) {
-            child = node.getPath();
-            idx = child.lastIndexOf(Filesystem.SEPARATOR_CHAR);
-            if (!path.equals(child) && path.equals(idx == -1 ? "" : child.substring(0, idx))) {
-                if (node.exists()) {
-                    result.add(node);
-                }
-            }
+        obj = content(path);
+        if (obj == null) {
+            throw new FileNotFoundException(new MemoryNode(this, path));
         }
-        return result;
+        return obj instanceof Blocks ? (Blocks) obj : null;
     }
 
-    //--
-
     InputStream open(String path) throws IOException {
         Object obj;
 
-        obj = store.get(path);
+        obj = content(path);
         if (obj instanceof FileNode) {
             return ((FileNode) obj).newInputStream();
+        } else if (obj == null) {
+            throw new FileNotFoundException(new MemoryNode(this, path));
         } else {
-            return new CheckedByteArrayInputStream((byte[]) obj);
+            return ((Blocks) obj).newInputStream();
         }
     }
 
     byte[] readBytes(String path) throws IOException {
         Object obj;
-        byte[] bytes;
 
-        obj = store.get(path);
+        obj = content(path);
         if (obj instanceof FileNode) {
             return ((FileNode) obj).readBytes();
+        } else if (obj == null) {
+            throw new FileNotFoundException(new MemoryNode(this, path));
+        } else {
+            return ((Blocks) obj).toArray();
+        }
+    }
+
+    long copyTo(String path, OutputStream dest, long skip) throws IOException {
+        Object obj;
+
+        obj = content(path);
+        if (obj instanceof FileNode) {
+            return ((FileNode) obj).copyFileTo(dest, skip);
+        } else if (obj == null) {
+            throw new FileNotFoundException(new MemoryNode(this, path));
         } else {
-            bytes = (byte[]) obj;
-            return Arrays.copyOf(bytes, bytes.length);
+            return ((Blocks) obj).writeTo(dest, skip);
         }
     }
 
-    void store(String path, byte[] data, int used) throws IOException {
+    /**
+     * Creates or replaces a file. Blocks are shared, not copied, unless the file is too large to keep in memory or the
+     * filesystem stores off-heap.
+     */
+    void store(String path, Blocks blocks) throws IOException {
+        Entry parent;
+        Entry entry;
+        Object content;
         Object old;
-        FileNode file;
-        byte[] copy;
 
-        old = store.get(path);
-        if (old instanceof FileNode) {
-            ((FileNode) old).deleteTree();
+        content = filesystem.getStorage().prepare(blocks);
+        while (true) {
+            parent = lookup(parent(path));
+            if (parent == null || parent.children == null) {
+                discard(content);
+                throw new FileNotFoundException(new MemoryNode(this, path), "parent directory not found");
+            }
+            synchronized (parent) {
+                if (parent.deleted) {
+                    continue;
+                }
+                entry = parent.children.get(name(path));
+                if (entry == null) {
+                    entry = new Entry(Type.FILE, System.currentTimeMillis());
+                    synchronized (entry) {
+                        entry.content = content;
+                        filesystem.getStorage().add(entry, content);
+                    }
+                    parent.children.put(name(path), entry);
+                    old = null;
+                    break;
+                }
+            }
+            if (entry.type != Type.FILE) {
+                discard(content);
+                throw new IOException("not a file: " + path);
+            }
+            synchronized (entry) {
+                if (!entry.deleted) {
+                    old = entry.content;
+                    entry.content = content;
+                    entry.lastModified = System.currentTimeMillis();
+                    filesystem.getStorage().add(entry, content);
+                    break;
+                }
+            }
+            // deleted concurrently, try again
         }
-        if (used > filesystem.getMaxInMemorySize()) {
-            file = filesystem.getWorld().getTemp().createTempFile();
-            file.writeBytes(data, 0, used, false);
-            store.put(path, file);
-        } else {
-            copy = new byte[used];
-            System.arraycopy(data, 0, copy, 0, used);
-            store.put(path, copy);
+        filesystem.getStorage().release(entry, old);
+        filesystem.getStorage().trim();
+    }
+
+    private static void discard(Object content) throws IOException {
+        if (content instanceof FileNode) {
+            ((FileNode) content).deleteFile();
         }
     }
 }
@@ -0,0 +1,215 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.memory;
+
+import net.oneandone.sushi.fs.file.FileNode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Accounts for the file content of all roots of a filesystem. When resident bytes exceed the budget, the least
+ * recently used files are written to temp files. Roots are referenced weakly; the content of collected roots is released
+ * with the next write or statistics call. Locking order: entry monitors before this.
+ */
+final class Storage {
+    private final MemoryFilesystem filesystem;
+
+    /** resident content in access order; guarded by this */
+    private final LinkedHashMap<MemoryRoot.Entry, Blocks> resident;
+    /** guarded by this */
+    private long residentBytes;
+    /** guarded by this */
+    private long spilledBytes;
+    /** keeps the references of live roots reachable; guarded by this */
+    private final Set<RootReference> roots;
+    private final ReferenceQueue<MemoryRoot> collected;
+
+    Storage(MemoryFilesystem filesystem) {
+        this.filesystem = filesystem;
+        this.resident = new LinkedHashMap<>(16, 0.75f, true);
+        this.residentBytes = 0;
+        this.spilledBytes = 0;
+        this.roots = new HashSet<>();
+        this.collected = new ReferenceQueue<>();
+    }
+
+    public long getResidentBytes() {
+        expunge();
+        synchronized (this) {
+            return residentBytes;
+        }
+    }
+
+    public long getSpilledBytes() {
+        expunge();
+        synchronized (this) {
+            return spilledBytes;
+        }
+    }
+
+    synchronized void register(MemoryRoot root, MemoryRoot.Entry top) {
+        roots.add(new RootReference(root, top, collected));
+    }
+
+    /** Releases the content of collected roots */
+    private void expunge() {
+        RootReference reference;
+
+        while ((reference = (RootReference) collected.poll()) != null) {
+            synchronized (this) {
+                roots.remove(reference);
+            }
+            try {
+                MemoryRoot.releaseTree(this, reference.top);
+            } catch (IOException e) {
+                // temp files that cannot be deleted stay in the temp directory; nobody can read them anymore
+            }
+        }
+    }
+
+    /** @return content to store; off-heap or spilled as configured */
+    Object prepare(Blocks blocks) throws IOException {
+        expunge();
+        if (blocks.length > filesystem.getMaxInMemorySize()) {
+            return write(blocks);
+        } else if (filesystem.getOffHeap()) {
+            return blocks.toDirect();
+        } else {
+            return blocks;
+        }
+    }
+
+    /** Call with the monitor of entry held, after content was installed */
+    synchronized void add(MemoryRoot.Entry entry, Object content) throws IOException {
+        Blocks previous;
+
+        if (content instanceof Blocks) {
+            previous = resident.put(entry, (Blocks) content);
+            if (previous != null) {
+                residentBytes -= previous.length;
+            }
+            residentBytes += ((Blocks) content).length;
+        } else {
+            previous = resident.remove(entry);
+            if (previous != null) {
+                residentBytes -= previous.length;
+            }
+            spilledBytes += ((FileNode) content).size();
+        }
+    }
+
+    synchronized void touch(MemoryRoot.Entry entry) {
+        resident.get(entry);
+    }
+
+    /** Call for content that is no longer referenced by entry; no-op for resident content replaced via add */
+    void release(MemoryRoot.Entry entry, Object content) throws IOException {
+        FileNode file;
+        long size;
+
+        if (content instanceof Blocks) {
+            synchronized (this) {
+                if (resident.remove(entry, content)) {
+                    residentBytes -= ((Blocks) content).length;
+                }
+            }
+        } else if (content instanceof FileNode) {
+            file = (FileNode) content;
+            size = file.size();
+            file.deleteFile();
+            synchronized (this) {
+                spilledBytes -= size;
+            }
+        }
+    }
+
+    /** Spills least recently used files until resident bytes fit into the budget */
+    void trim() throws IOException {
+        Iterator<Map.Entry<MemoryRoot.Entry, Blocks>> iter;
+        Map.Entry<MemoryRoot.Entry, Blocks> eldest;
+        MemoryRoot.Entry entry;
+        Blocks blocks;
+        FileNode file;
+        boolean swapped;
+
+        while (true) {
+            synchronized (this) {
+                if (residentBytes <= filesystem.getMemoryBudget()) {
+                    return;
+                }
+                iter = resident.entrySet().iterator();
+                if (!iter.hasNext()) {
+                    return;
+                }
+                eldest = iter.next();
+                iter.remove();
+                entry = eldest.getKey();
+                blocks = eldest.getValue();
+                residentBytes -= blocks.length;
+            }
+            try {
+                file = write(blocks);
+            } catch (IOException e) {
+                synchronized (this) {
+                    resident.put(entry, blocks);
+                    residentBytes += blocks.length;
+                }
+                throw e;
+            }
+            synchronized (entry) {
+                swapped = !entry.isDeleted() && entry.content == blocks;
+                if (swapped) {
+                    entry.content = file;
+                    synchronized (this) {
+                        spilledBytes += blocks.length;
+                    }
+                }
+            }
+            if (!swapped) {
+                // replaced or deleted concurrently
+                file.deleteFile();
+            }
+        }
+    }
+
+    /** The tree of a root, to release it after the root has been collected */
+    private static class RootReference extends WeakReference<MemoryRoot> {
+        public final MemoryRoot.Entry top;
+
+        RootReference(MemoryRoot root, MemoryRoot.Entry top, ReferenceQueue<MemoryRoot> queue) {
+            super(root, queue);
+            this.top = top;
+        }
+    }
+
+    private FileNode write(Blocks blocks) throws IOException {
+        FileNode file;
+
+        file = filesystem.getWorld().getTemp().createTempFile();
+        try (OutputStream out = file.newOutputStream()) {
+            blocks.writeTo(out, 0);
+        }
+        return file;
+    }
+}
@@ -48,14 +48,21 @@ import net.oneandone.sushi.launcher.ExitCode;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.attribute.GroupPrincipal;
 import java.nio.file.attribute.UserPrincipal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 public class SshNode extends Node<SshNode> {
     private final SshRoot root;
@@ -287,6 +294,112 @@ public class SshNode extends Node<SshNode> {
         return this;
     }
 
+    /**
+     * Deletes subdirectories concurrently with up to parallelism sftp channels. Directory listings tell files from
+     * directories, so entries are not stat'ed one by one.
+     */
+    @Override
+    public SshNode deleteTree(int parallelism) throws DeleteException, NodeNotFoundException {
+        BlockingQueue<ChannelSftp> channels;
+        ForkJoinPool pool;
+        ChannelSftp sftp;
+
+        if (parallelism < 2) {
+            return deleteTree();
+        }
+        channels = new ArrayBlockingQueue<>(parallelism);
+        pool = null;
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                channels.add(alloc());
+            }
+            sftp = channels.peek();
+            if (!sftp.lstat(escape(slashPath)).isDir()) {
+                sftp.rm(escape(slashPath));
+                return this;
+            }
+            pool = new ForkJoinPool(parallelism);
+            pool.invoke(new DeleteTask(this, channels));
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                throw new NodeNotFoundException(this);
+            }
+            throw new DeleteException(this, e);
+        } catch (JSchException e) {
+            throw new DeleteException(this, e);
+        } catch (UncheckedIOException e) {
+            throw new DeleteException(this, e.getCause());
+        } finally {
+            if (pool != null) {
+                // wait for tasks still holding channels
+                pool.shutdown();
+                try {
+                    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            for (ChannelSftp channel : channels) {
+                free(channel);
+            }
+        }
+        return this;
+    }
+
+    /** Deletes the files of a directory, forks a task per subdirectory, then removes the directory */
+    private static class DeleteTask extends RecursiveAction {
+        private final SshNode directory;
+        private final BlockingQueue<ChannelSftp> channels;
+
+        DeleteTask(SshNode directory, BlockingQueue<ChannelSftp> channels) {
+            this.directory = directory;
+            this.channels = channels;
+        }
+
+        @Override
+        protected void compute() {
+            List<DeleteTask> subdirectories;
+            ChannelSftp.LsEntry entry;
+            SshNode child;
+            ChannelSftp sftp;
+
+            subdirectories = new ArrayList<>();
+            child = directory;
+            try {
+                sftp = channels.take();
+                try {
+                    for (Object obj : sftp.ls(escape(directory.slashPath))) {
+                        entry = (ChannelSftp.LsEntry) obj;
+                        if (".".equals(entry.getFilename()) || "..".equals(entry.getFilename())) {
+                            continue;
+                        }
+                        child = directory.join(entry.getFilename());
+                        // listings report lstat attributes, i.e. links are not directories
+                        if (entry.getAttrs().isDir()) {
+                            subdirectories.add(new DeleteTask(child, channels));
+                        } else {
+                            sftp.rm(escape(child.slashPath));
+                        }
+                    }
+                    child = directory;
+                } finally {
+                    channels.add(sftp);
+                }
+                invokeAll(subdirectories);
+                sftp = channels.take();
+                try {
+                    sftp.rmdir(escape(directory.slashPath));
+                } finally {
+                    channels.add(sftp);
+                }
+            } catch (SftpException e) {
+                throw new UncheckedIOException(new DeleteException(child, e));
+            } catch (InterruptedException e) {
+                throw new UncheckedIOException(new InterruptedIOException(e.getMessage()));
+            }
+        }
+    }
+
     private void doDelete(ChannelSftp sftp) throws DeleteException, NodeNotFoundException {
         SftpATTRS stat;
 
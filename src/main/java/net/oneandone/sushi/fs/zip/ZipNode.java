@@ -28,10 +28,16 @@ import net.oneandone.sushi.fs.NewInputStreamException;
 import net.oneandone.sushi.fs.Node;
 import net.oneandone.sushi.fs.SetLastModifiedException;
 import net.oneandone.sushi.fs.SizeException;
+import net.oneandone.sushi.io.ByteBufferChannel;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.GroupPrincipal;
 import java.nio.file.attribute.UserPrincipal;
 import java.util.ArrayList;
@@ -227,6 +233,43 @@ public class ZipNode extends Node<ZipNode> {
         }
     }
 
+    /** Stored entries are mapped from the zip file, compressed entries are inflated into a heap buffer. */
+    @Override
+    public ByteBuffer map() throws IOException {
+        ZipEntry entry;
+        long offset;
+
+        entry = fileEntry();
+        offset = root.dataOffset(entry);
+        if (offset == -1) {
+            return super.map();
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(root.getZip().getName()), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, entry.getSize());
+        }
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel() throws IOException {
+        if (root.dataOffset(fileEntry()) == -1) {
+            return super.newByteChannel();
+        }
+        return new ByteBufferChannel(map());
+    }
+
+    private ZipEntry fileEntry() throws FileNotFoundException {
+        ZipEntry entry;
+
+        entry = root.getZip().getEntry(path);
+        if (entry == null) {
+            throw new FileNotFoundException(this);
+        }
+        if (entry.isDirectory()) {
+            throw new FileNotFoundException(this, "file not found - this is a directory");
+        }
+        return entry;
+    }
+
     public long copyFileTo(OutputStream dest, long skip) throws CopyFileToException, FileNotFoundException {
         return copyFileToImpl(dest, skip);
     }
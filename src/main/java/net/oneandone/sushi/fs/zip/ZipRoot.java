@@ -22,9 +22,17 @@ import net.oneandone.sushi.fs.Root;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -32,10 +40,13 @@ import java.util.zip.ZipFile;
 public class ZipRoot implements Root<ZipNode> {
     private final ZipFilesystem filesystem;
     private final ZipFile zip;
+    /** local header offsets of stored entries; null until needed */
+    private Map<String, Long> storedHeaders;
 
     public ZipRoot(ZipFilesystem filesystem, ZipFile zip) {
         this.filesystem = filesystem;
         this.zip = zip;
+        this.storedHeaders = null;
     }
 
     @Override
@@ -112,6 +123,86 @@ public class ZipRoot implements Root<ZipNode> {
         return result;
     }
 
+    //-- data offsets for mapping stored entries
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int END_SIZE = 22;
+    private static final int CENTRAL_SIZE = 46;
+    private static final int LOCAL_SIZE = 30;
+
+    /** @return offset of the entry's data in the zip file, -1 if the entry is compressed or the zip could not be parsed */
+    public synchronized long dataOffset(ZipEntry entry) throws IOException {
+        Long header;
+        ByteBuffer local;
+
+        if (entry.getMethod() != ZipEntry.STORED) {
+            return -1;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(zip.getName()), StandardOpenOption.READ)) {
+            if (storedHeaders == null) {
+                storedHeaders = storedHeaders(channel);
+            }
+            header = storedHeaders.get(entry.getName());
+            if (header == null) {
+                return -1;
+            }
+            local = ByteBuffer.allocate(LOCAL_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (local.hasRemaining()) {
+                if (channel.read(local, header + local.position()) == -1) {
+                    return -1;
+                }
+            }
+            // the local extra field may differ from the central one
+            return header + LOCAL_SIZE + (local.getShort(26) & 0xffff) + (local.getShort(28) & 0xffff);
+        }
+    }
+
+    /** Reads the central directory; zip64 archives are not supported and yield an empty result. */
+    private static Map<String, Long> storedHeaders(FileChannel channel) throws IOException {
+        Map<String, Long> result;
+        long size;
+        int tail;
+        ByteBuffer buffer;
+        int end;
+        long centralSize;
+        long centralOffset;
+        int pos;
+        int nameLength;
+        byte[] name;
+
+        result = new HashMap<>();
+        size = channel.size();
+        tail = (int) Math.min(size, END_SIZE + 0xffff);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, size - tail, tail).order(ByteOrder.LITTLE_ENDIAN);
+        for (end = tail - END_SIZE; end >= 0; end--) {
+            if (buffer.getInt(end) == END_SIGNATURE) {
+                break;
+            }
+        }
+        if (end < 0) {
+            return result;
+        }
+        centralSize = buffer.getInt(end + 12) & 0xffffffffL;
+        centralOffset = buffer.getInt(end + 16) & 0xffffffffL;
+        if (centralOffset == 0xffffffffL || centralOffset + centralSize > size) {
+            return result;
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, centralOffset, centralSize).order(ByteOrder.LITTLE_ENDIAN);
+        pos = 0;
+        while (pos + CENTRAL_SIZE <= centralSize && buffer.getInt(pos) == CENTRAL_SIGNATURE) {
+            nameLength = buffer.getShort(pos + 28) & 0xffff;
+            if (buffer.getShort(pos + 10) == 0) {
+                name = new byte[nameLength];
+                buffer.position(pos + CENTRAL_SIZE);
+                buffer.get(name);
+                result.put(new String(name, StandardCharsets.UTF_8), buffer.getInt(pos + 42) & 0xffffffffL);
+            }
+            pos += CENTRAL_SIZE + nameLength + (buffer.getShort(pos + 30) & 0xffff) + (buffer.getShort(pos + 32) & 0xffff);
+        }
+        return result;
+    }
+
     public Manifest readManifest() throws IOException {
         Manifest result;
 
@@ -197,7 +197,7 @@ public class Buffer {
         }
         done = 0;
         while (done < n) {
-            chunk = src.read(buffer, 0, (int) Math.min(Integer.MAX_VALUE, n - done));
+            chunk = src.read(buffer, 0, (int) Math.min(buffer.length, n - done));
             if (chunk == -1) {
                 break;
             }
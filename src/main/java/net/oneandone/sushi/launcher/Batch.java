@@ -0,0 +1,311 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.launcher;
+
+import net.oneandone.sushi.io.PrefixWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executes many launchers with a limited number of processes running concurrently. Output of every process goes into
+ * its own writer, or into a shared writer with a per-process prefix; in the latter case, lines from different processes
+ * are not mixed. Stderr is redirected to stdout, stdin is closed.
+ *
+ * With fail-fast, the first failure stops the batch: running processes are destroyed, processes not yet started are
+ * skipped, and the failure is thrown by run(). Otherwise, all processes are executed and failures are reported
+ * in the respective Result.
+ */
+public class Batch {
+    private final int concurrency;
+    private boolean failFast;
+    private Writer merged;
+    private String newline;
+    private final List<Job> jobs;
+
+    public Batch(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency: " + concurrency);
+        }
+        this.concurrency = concurrency;
+        this.failFast = false;
+        this.merged = null;
+        this.newline = null;
+        this.jobs = new ArrayList<>();
+    }
+
+    //-- configuration
+
+    public Batch failFast(boolean enable) {
+        this.failFast = enable;
+        return this;
+    }
+
+    /** Configures the shared writer for launchers added with a prefix. */
+    public Batch merge(Writer dest) {
+        return merge(dest, System.getProperty("line.separator"));
+    }
+
+    public Batch merge(Writer dest, String lineSeparator) {
+        this.merged = dest;
+        this.newline = lineSeparator;
+        return this;
+    }
+
+    /** Output is available from Result.output */
+    public Batch add(Launcher launcher) {
+        jobs.add(new Job(launcher, new StringWriter()));
+        return this;
+    }
+
+    /** Output is streamed to dest, which is not closed. Output is not available from Result.output */
+    public Batch add(Launcher launcher, Writer dest) {
+        jobs.add(new Job(launcher, dest));
+        return this;
+    }
+
+    /** Output is streamed to the merged writer, every line is prefixed with the specified prefix. */
+    public Batch add(Launcher launcher, String prefix) {
+        if (merged == null) {
+            throw new IllegalStateException("call merge() first");
+        }
+        jobs.add(new Job(launcher, new PrefixWriter(new LineWriter(merged), prefix, newline)));
+        return this;
+    }
+
+    public int size() {
+        return jobs.size();
+    }
+
+    //-- execution
+
+    /**
+     * Executes all launchers added so far.
+     *
+     * @return results in the order the launchers were added
+     * @throws Failure first failure if fail-fast is enabled
+     */
+    public List<Result> run() throws Failure {
+        ExecutorService executor;
+        CompletionService<Result> completion;
+        Running running;
+        Result[] results;
+        Result result;
+        Failure first;
+
+        executor = Executors.newFixedThreadPool(Math.min(concurrency, Math.max(1, jobs.size())), runnable -> {
+            Thread thread;
+
+            thread = new Thread(runnable, "batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        completion = new ExecutorCompletionService<>(executor);
+        running = new Running();
+        results = new Result[jobs.size()];
+        first = null;
+        try {
+            for (int i = 0; i < results.length; i++) {
+                Job job;
+                int idx;
+
+                job = jobs.get(i);
+                idx = i;
+                completion.submit(() -> {
+                    results[idx] = job.run(running);
+                    return results[idx];
+                });
+            }
+            for (int i = 0; i < results.length; i++) {
+                result = get(completion);
+                if (failFast && result.failure != null) {
+                    first = result.failure;
+                    break;
+                }
+            }
+        } finally {
+            // no-op unless we stop early
+            running.stop();
+            executor.shutdownNow();
+        }
+        if (first != null) {
+            throw first;
+        }
+        return Arrays.asList(results);
+    }
+
+    private static Result get(CompletionService<Result> completion) {
+        Throwable cause;
+
+        try {
+            return completion.take().get();
+        } catch (InterruptedException e) {
+            throw new Interrupted(e);
+        } catch (ExecutionException e) {
+            cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    private static class Job {
+        private final Launcher launcher;
+        private final Writer dest;
+
+        Job(Launcher launcher, Writer dest) {
+            this.launcher = launcher;
+            this.dest = dest;
+        }
+
+        public Result run(Running running) {
+            long started;
+            Launcher.Handle handle;
+            Failure failure;
+            int exit;
+
+            started = System.currentTimeMillis();
+            handle = null;
+            failure = null;
+            exit = 0;
+            try {
+                if (running.isStopped()) {
+                    throw new Failure(launcher, new IOException("batch stopped"));
+                }
+                handle = launcher.launch(dest, null, false, null, false);
+                running.add(handle);
+                handle.process.getOutputStream().close();
+                handle.await();
+            } catch (ExitCode e) {
+                failure = e;
+                exit = e.code;
+            } catch (Failure e) {
+                failure = e;
+                exit = -1;
+            } catch (IOException e) {
+                failure = new Failure(launcher, e);
+                exit = -1;
+            } finally {
+                if (handle != null) {
+                    running.remove(handle);
+                }
+            }
+            return new Result(launcher, exit, failure, System.currentTimeMillis() - started,
+                    dest instanceof StringWriter ? dest.toString() : null);
+        }
+    }
+
+    /** Processes currently running. Once stopped, they are destroyed, and processes added later are destroyed immediately. */
+    private static class Running {
+        private final Set<Launcher.Handle> handles = new HashSet<>();
+        private boolean stopped = false;
+
+        public synchronized boolean isStopped() {
+            return stopped;
+        }
+
+        public synchronized void add(Launcher.Handle handle) {
+            if (stopped) {
+                handle.process.destroy();
+            } else {
+                handles.add(handle);
+            }
+        }
+
+        public synchronized void remove(Launcher.Handle handle) {
+            handles.remove(handle);
+        }
+
+        public synchronized void stop() {
+            stopped = true;
+            for (Launcher.Handle handle : handles) {
+                handle.process.destroy();
+            }
+            handles.clear();
+        }
+    }
+
+    public static class Result {
+        public final Launcher launcher;
+        /** -1 if the process could not be started */
+        public final int exitCode;
+        /** null if the process succeeded */
+        public final Failure failure;
+        public final long millis;
+        /** null if output was streamed into a writer */
+        public final String output;
+
+        public Result(Launcher launcher, int exitCode, Failure failure, long millis, String output) {
+            this.launcher = launcher;
+            this.exitCode = exitCode;
+            this.failure = failure;
+            this.millis = millis;
+            this.output = output;
+        }
+
+        @Override
+        public String toString() {
+            return launcher + ": exit code " + exitCode + " (" + millis + " ms)";
+        }
+    }
+
+    /** Collects chars until flush, then writes them to the shared destination in one piece. */
+    private static class LineWriter extends Writer {
+        private final Writer dest;
+        private final StringBuilder buffer;
+
+        LineWriter(Writer dest) {
+            this.dest = dest;
+            this.buffer = new StringBuilder();
+        }
+
+        @Override
+        public void write(char[] chars, int ofs, int len) {
+            buffer.append(chars, ofs, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (buffer.length() > 0) {
+                synchronized (dest) {
+                    dest.write(buffer.toString());
+                    dest.flush();
+                }
+                buffer.setLength(0);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
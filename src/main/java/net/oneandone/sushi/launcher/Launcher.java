@@ -15,11 +15,14 @@
  */
 package net.oneandone.sushi.launcher;
 
+import net.oneandone.sushi.fs.Node;
 import net.oneandone.sushi.fs.file.FileNode;
 import net.oneandone.sushi.util.Separator;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
@@ -35,12 +38,11 @@ import java.util.concurrent.TimeUnit;
  * because it's harder to ignore exceptions than to ignore return codes.
  *
  * Launcher streams chars, although the underlying process stream bytes. Encoding/decoding is performed
- * according to the specified encoding. If you need to stream bytes with Launcher: pass in the appropriate
- * OutputStreamWriter/InputStreamReader and make sure that their encoding and the encoding for Launcher is
- * ascii. (Rationale: character stream are usually more convenient to use in applications than byte streams
- * because process input/output is usually for humans - and thus has to be converted. To keep things simple,
- * I accept the small performance penalty of also de- and encoding; if this is an issue in your application,
- * you have to fall back to Java's ProcessBuilder.)
+ * according to the specified encoding. (Rationale: character stream are usually more convenient to use in applications
+ * than byte streams because process input/output is usually for humans - and thus has to be converted.) If you need
+ * bytes, e.g. for binary output, use the OutputStream/InputStream variants of exec and launch: they copy bytes
+ * without de- or encoding. exec(Node) writes stdout into a node; for FileNodes, the process writes into the file
+ * directly.
  *
  * Note that the first "arg" passed to an instance of this class is actually not an argument, but
  * the name of the program or script to be executed. I accept this inconsistency because it simplifies
@@ -141,6 +143,72 @@ public class Launcher {
     }
 
     public Handle launch(Writer stdout, Writer stderr, boolean flushDest, Reader stdin, boolean stdinInherit) throws Failure {
+        return doLaunch(ProcessBuilder.Redirect.PIPE, stdout, false, stderr, false, flushDest, stdin, stdinInherit);
+    }
+
+    //-- byte streams
+
+    public void exec(OutputStream all) throws Failure {
+        exec(all, null);
+    }
+
+    /** Byte variant of exec(Writer, Writer), no encoding is performed */
+    public void exec(OutputStream stdout, OutputStream stderr) throws Failure {
+        exec(stdout, stderr, true, null, true);
+    }
+
+    /** Byte variant of exec(Writer, Writer, boolean, Reader, boolean), no encoding is performed */
+    public void exec(OutputStream stdout, OutputStream stderr, boolean flushDest, InputStream stdin, boolean stdinInherit) throws Failure {
+        launch(stdout, stderr, flushDest, stdin, stdinInherit).await();
+    }
+
+    /** Byte variant of launch(Writer, Writer, boolean, Reader, boolean), no encoding is performed */
+    public Handle launch(OutputStream stdout, OutputStream stderr, boolean flushDest, InputStream stdin, boolean stdinInherit) throws Failure {
+        return doLaunch(ProcessBuilder.Redirect.PIPE, stdout, false, stderr, false, flushDest, stdin, stdinInherit);
+    }
+
+    /**
+     * Writes stdout into the specified node, stderr is reported in ExitCode exceptions. If dest is a FileNode, the
+     * process writes into the file directly, without passing data through this JVM. Otherwise, bytes are copied
+     * without encoding.
+     */
+    public void exec(Node<?> dest) throws Failure {
+        launch(dest).await();
+    }
+
+    public Handle launch(Node<?> dest) throws Failure {
+        OutputStream out;
+
+        if (dest instanceof FileNode) {
+            return doLaunch(ProcessBuilder.Redirect.to(((FileNode) dest).toPath().toFile()), null, false, new StringWriter(), true, false, null, true);
+        } else {
+            try {
+                out = dest.newOutputStream();
+            } catch (IOException e) {
+                throw new Failure(this, e);
+            }
+            try {
+                return doLaunch(ProcessBuilder.Redirect.PIPE, out, true, new StringWriter(), true, false, null, true);
+            } catch (Failure | RuntimeException e) {
+                try {
+                    out.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @param output where the process writes to; stdout is ignored unless this is PIPE
+     * @param stdout Writer or OutputStream
+     * @param stderr Writer, OutputStream or null
+     * @param reportStderr to report stderr in ExitCode exceptions instead of stdout
+     * @param stdin Reader, InputStream or null
+     */
+    private Handle doLaunch(ProcessBuilder.Redirect output, Object stdout, boolean closeStdout, Object stderr, boolean reportStderr,
+                            boolean flushDest, Object stdin, boolean stdinInherit) throws Failure {
         Process process;
         Pumper psout;
         Pumper pserr;
@@ -151,20 +219,27 @@ public class Launcher {
             // - that's to late because buffer would also be null
             throw new IllegalStateException("Missing directory. Call dir() before invoking this method");
         }
+        builder.redirectOutput(output);
         builder.redirectErrorStream(stderr == null);
         if (stdinInherit) {
             builder.redirectInput(ProcessBuilder.Redirect.INHERIT);
             if (stdin != null) {
                 throw new IllegalArgumentException();
             }
+        } else {
+            builder.redirectInput(ProcessBuilder.Redirect.PIPE);
         }
         try {
             process = builder.start();
         } catch (IOException e) {
             throw new Failure(this, e);
         }
-        psout = Pumper.create(process.getInputStream(), stdout, flushDest, false, encoding);
-        psout.start();
+        if (output == ProcessBuilder.Redirect.PIPE) {
+            psout = Pumper.create(process.getInputStream(), stdout, flushDest, closeStdout, encoding);
+            psout.start();
+        } else {
+            psout = null;
+        }
         if (stderr != null) {
             pserr = Pumper.create(process.getErrorStream(), stderr, flushDest, false, encoding);
             pserr.start();
@@ -178,20 +253,27 @@ public class Launcher {
         } else {
             psin = null;
         }
-        return new Handle(process, psout, pserr, psin);
+        return new Handle(process, psout, pserr, psin, reportStderr);
     }
 
     public class Handle {
         public final Process process;
+        /** null if stdout was redirected into a file */
         public final Pumper psout;
         public final Pumper pserr;
         public final Pumper psin;
+        private final boolean reportStderr;
 
         public Handle(Process process, Pumper psout, Pumper pserr, Pumper psin) {
+            this(process, psout, pserr, psin, false);
+        }
+
+        private Handle(Process process, Pumper psout, Pumper pserr, Pumper psin, boolean reportStderr) {
             this.process = process;
             this.psout = psout;
             this.pserr = pserr;
             this.psin = psin;
+            this.reportStderr = reportStderr;
         }
 
         public void await(long millis) throws Failure {
@@ -216,9 +298,10 @@ public class Launcher {
 
         public void await() throws Failure {
             int exit;
-            String output;
 
-            psout.finish(Launcher.this);
+            if (psout != null) {
+                psout.finish(Launcher.this);
+            }
             if (pserr != null) {
                 pserr.finish(Launcher.this);
             }
@@ -231,17 +314,28 @@ public class Launcher {
                 psin.finish(Launcher.this);
             }
             if (exit != 0) {
-                if (pserr == null && psout.getDest() instanceof StringWriter) {
-                    output = ((StringWriter) psout.getDest()).getBuffer().toString();
-                } else {
-                    output = "";
-                }
-                throw new ExitCode(Launcher.this, exit, output);
+                throw new ExitCode(Launcher.this, exit, capturedOutput());
+            }
+        }
+
+        /** @return stderr if requested, otherwise merged output if available as a string; empty string otherwise */
+        private String capturedOutput() {
+            Pumper pumper;
+
+            if (reportStderr) {
+                pumper = pserr;
+            } else {
+                pumper = pserr == null ? psout : null;
+            }
+            if (pumper != null && pumper.getDest() instanceof StringWriter) {
+                return ((StringWriter) pumper.getDest()).getBuffer().toString();
+            } else {
+                return "";
             }
         }
 
         public String awaitString() throws Failure {
-            if (!(psout.getDest() instanceof StringWriter)) {
+            if (psout == null || !(psout.getDest() instanceof StringWriter)) {
                 throw new IllegalStateException();
             }
             if (pserr != null) {
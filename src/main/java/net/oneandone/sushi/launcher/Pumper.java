@@ -23,9 +23,64 @@ import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies a process stream. Pumpers do not have their own thread, they run on a shared executor that uses virtual
+ * threads if the runtime supports them, and a pool of daemon threads otherwise. Streams are copied as bytes if
+ * both source and destination are byte streams, otherwise chars are copied. When flushing is requested,
+ * the destination is flushed whenever the source has no more data available, not after every chunk.
+ */
+public class Pumper implements Runnable {
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    private static ExecutorService createExecutor() {
+        ExecutorService result;
+
+        result = virtualExecutor();
+        if (result == null) {
+            result = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread;
+
+                    thread = new Thread(runnable, "pumper-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return result;
+    }
+
+    /** @return null if the runtime has no virtual threads */
+    private static ExecutorService virtualExecutor() {
+        Object builder;
+        ThreadFactory factory;
+
+        // reflection because we have to run on Java 11
+        try {
+            builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            factory = (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
 
-public class Pumper extends Thread {
     public static Pumper create(Object streamOrReader, Object streamOrWriter, boolean flushDest, boolean closeDest, String encoding) {
+        if (streamOrReader instanceof InputStream && streamOrWriter instanceof OutputStream) {
+            return new Pumper((InputStream) streamOrReader, (OutputStream) streamOrWriter, flushDest, closeDest);
+        }
         if (streamOrWriter instanceof OutputStream) {
             try {
                 streamOrWriter = new OutputStreamWriter((OutputStream) streamOrWriter, encoding);
@@ -44,38 +99,72 @@ public class Pumper extends Thread {
     }
 
     private Throwable exception;
-    private final char[] buffer;
+    private Future<?> future;
+
+    /** null when pumping bytes */
     private final Reader src;
+    /** null when pumping bytes */
     private final Writer dest;
+    /** null when pumping chars */
+    private final InputStream srcStream;
+    /** null when pumping chars */
+    private final OutputStream destStream;
     private final boolean flushDest;
     private final boolean closeDest;
 
     public Pumper(Reader src, Writer dest, boolean flushDest, boolean closeDest) {
-        this.buffer = new char[1024];
+        this(src, dest, null, null, flushDest, closeDest);
+    }
+
+    public Pumper(InputStream src, OutputStream dest, boolean flushDest, boolean closeDest) {
+        this(null, null, src, dest, flushDest, closeDest);
+    }
+
+    private Pumper(Reader src, Writer dest, InputStream srcStream, OutputStream destStream, boolean flushDest, boolean closeDest) {
         this.src = src;
         this.dest = dest;
+        this.srcStream = srcStream;
+        this.destStream = destStream;
         this.flushDest = flushDest;
         this.closeDest = closeDest;
-        setDaemon(true);
     }
 
+    /** @return null when pumping bytes */
     public Writer getDest() {
         return dest;
     }
 
+    /** @return null when pumping chars */
+    public OutputStream getDestStream() {
+        return destStream;
+    }
+
+    public void start() {
+        if (future != null) {
+            throw new IllegalStateException("already started");
+        }
+        future = EXECUTOR.submit(this);
+    }
+
     @Override
     public void run() {
         try {
-            runUnchecked();
+            if (src != null) {
+                pumpChars();
+            } else {
+                pumpBytes();
+            }
         } catch (Throwable e) {
             exception = e;
             // fall through
         }
     }
 
-    private void runUnchecked() throws IOException {
+    private void pumpChars() throws IOException {
+        char[] buffer;
         int len;
 
+        buffer = new char[BUFFER_SIZE];
         while (true) {
             len = src.read(buffer);
             if (len == -1) {
@@ -87,12 +176,47 @@ public class Pumper extends Thread {
                 return;
             }
             dest.write(buffer, 0, len);
-            if (flushDest) {
+            if (flushDest && !src.ready()) {
                 dest.flush();
             }
         }
     }
 
+    private void pumpBytes() throws IOException {
+        byte[] buffer;
+        int len;
+
+        buffer = new byte[BUFFER_SIZE];
+        while (true) {
+            len = srcStream.read(buffer);
+            if (len == -1) {
+                if (closeDest) {
+                    destStream.close();
+                } else {
+                    destStream.flush();
+                }
+                return;
+            }
+            destStream.write(buffer, 0, len);
+            if (flushDest && srcStream.available() == 0) {
+                destStream.flush();
+            }
+        }
+    }
+
+    /** Waits for the pumper to finish, like Thread.join did when Pumper was a thread. */
+    public void join() throws InterruptedException {
+        if (future == null) {
+            throw new IllegalStateException("not started");
+        }
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            // run() catches everything
+            throw new IllegalStateException(e);
+        }
+    }
+
     public void finish(Launcher launcher) throws Failure {
         try {
             join();
@@ -0,0 +1,273 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.xml;
+
+import net.oneandone.sushi.fs.Filesystem;
+import net.oneandone.sushi.util.Strings;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams the elements matching a simple path (see Selector.isSimple) without building a DOM for the whole document.
+ * The first step of the path matches the root element. Steps match local names; if a namespace is specified,
+ * it has to match too. Every matching element is returned as the document element of a small document of its own,
+ * so memory is bound by the size of one matching element. Use like a LineReader: call next() until it returns null.
+ */
+public class ElementReader implements AutoCloseable {
+    private static final XMLInputFactory FACTORY;
+
+    static {
+        FACTORY = XMLInputFactory.newInstance();
+        FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    public static ElementReader open(net.oneandone.sushi.fs.Node node, String path) throws IOException, XmlException {
+        return open(node, path, null);
+    }
+
+    public static ElementReader open(net.oneandone.sushi.fs.Node node, String path, Namespace namespace) throws IOException, XmlException {
+        return new ElementReader(node.newInputStream(), path, namespace);
+    }
+
+    private final InputStream src;
+    private final XMLStreamReader reader;
+    private final String[] steps;
+    private final Namespace namespace;
+    private final DocumentBuilder builder;
+
+    private QName root;
+    /** depth of the current element; 0 for the document */
+    private int depth;
+    /** number of steps matched by the current element and its ancestors */
+    private int matched;
+    /** namespace declarations of the current element and its ancestors, as prefix/uri pairs */
+    private final List<String[]> scope;
+    /** size of scope before the declarations of the element at the respective depth were added */
+    private final List<Integer> scopeSizes;
+
+    /**
+     * @param src is closed by close()
+     * @param namespace null to match any namespace
+     */
+    public ElementReader(InputStream src, String path, Namespace namespace) throws XmlException {
+        if (!Selector.isSimple(path)) {
+            throw new IllegalArgumentException("simple path expected: " + path);
+        }
+        this.src = src;
+        try {
+            this.reader = FACTORY.createXMLStreamReader(src);
+        } catch (XMLStreamException e) {
+            throw new XmlException(e.getMessage(), e);
+        }
+        this.steps = Strings.toArray(Filesystem.SEPARATOR.split(path));
+        this.namespace = namespace;
+        this.builder = Builder.createDocumentBuilder();
+        this.root = null;
+        this.depth = 0;
+        this.matched = 0;
+        this.scope = new ArrayList<>();
+        this.scopeSizes = new ArrayList<>();
+    }
+
+    /** @return null before the root element has been read */
+    public QName getRoot() {
+        return root;
+    }
+
+    /** @return null if there are no more matching elements */
+    public Element next() throws IOException, XmlException {
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        if (depth == 1) {
+                            root = reader.getName();
+                        }
+                        enterScope();
+                        if (matched == depth - 1 && depth <= steps.length && matches()) {
+                            matched = depth;
+                            if (matched == steps.length) {
+                                return fragment();
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (matched == depth) {
+                            matched--;
+                        }
+                        depth--;
+                        leaveScope();
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            if (e.getNestedException() instanceof IOException) {
+                throw (IOException) e.getNestedException();
+            }
+            throw new XmlException(e.getMessage(), e);
+        }
+    }
+
+    public List<Element> collect() throws IOException, XmlException {
+        List<Element> result;
+        Element element;
+
+        result = new ArrayList<>();
+        while (true) {
+            element = next();
+            if (element == null) {
+                return result;
+            }
+            result.add(element);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            src.close();
+        }
+    }
+
+    //--
+
+    private boolean matches() {
+        return steps[depth - 1].equals(reader.getLocalName()) && (namespace == null || namespace.hasUri(nullToEmpty(reader.getNamespaceURI())));
+    }
+
+    /** Reads the current element including its content; the reader is positioned at the end tag when done. */
+    private Element fragment() throws XMLStreamException {
+        Document document;
+        Element result;
+        Element current;
+
+        document = builder.newDocument();
+        result = element(document);
+        declareScope(result);
+        document.appendChild(result);
+        current = result;
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    current = (Element) current.appendChild(element(document));
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (current == result) {
+                        matched--;
+                        depth--;
+                        leaveScope();
+                        return result;
+                    }
+                    current = (Element) current.getParentNode();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    current.appendChild(document.createTextNode(reader.getText()));
+                    break;
+                case XMLStreamConstants.CDATA:
+                    current.appendChild(document.createCDATASection(reader.getText()));
+                    break;
+                default:
+                    // ignore comments and processing instructions
+                    break;
+            }
+        }
+    }
+
+    private void enterScope() {
+        scopeSizes.add(scope.size());
+        for (int i = 0, max = reader.getNamespaceCount(); i < max; i++) {
+            scope.add(new String[] { nullToEmpty(reader.getNamespacePrefix(i)), nullToEmpty(reader.getNamespaceURI(i)) });
+        }
+    }
+
+    private void leaveScope() {
+        int size;
+
+        size = scopeSizes.remove(scopeSizes.size() - 1);
+        while (scope.size() > size) {
+            scope.remove(scope.size() - 1);
+        }
+    }
+
+    /** Copies declarations inherited from ancestors, so prefixes in QName-valued content still resolve in the fragment. */
+    private void declareScope(Element element) {
+        String[] declaration;
+        String name;
+
+        for (int i = scope.size() - 1; i >= 0; i--) {
+            declaration = scope.get(i);
+            name = declaration[0].isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + declaration[0];
+            // inner declarations come first and win
+            if (!element.hasAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, declaration[0].isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : declaration[0])) {
+                element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, name, declaration[1]);
+            }
+        }
+    }
+
+    private Element element(Document document) {
+        Element element;
+        String prefix;
+
+        element = document.createElementNS(emptyToNull(reader.getNamespaceURI()), qualified(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0, max = reader.getNamespaceCount(); i < max; i++) {
+            prefix = reader.getNamespacePrefix(i);
+            element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                    prefix == null || prefix.isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix,
+                    nullToEmpty(reader.getNamespaceURI(i)));
+        }
+        for (int i = 0, max = reader.getAttributeCount(); i < max; i++) {
+            element.setAttributeNS(emptyToNull(reader.getAttributeNamespace(i)),
+                    qualified(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+        }
+        return element;
+    }
+
+    private static String qualified(String prefix, String local) {
+        return prefix == null || prefix.isEmpty() ? local : prefix + ":" + local;
+    }
+
+    private static String nullToEmpty(String str) {
+        return str == null ? "" : str;
+    }
+
+    private static String emptyToNull(String str) {
+        return str == null || str.isEmpty() ? null : str;
+    }
+}
@@ -43,6 +43,15 @@ import java.util.logging.Logger;
 public class Factories {
     private static final Logger LOG = Logger.getLogger(Factories.class.getName());
 
+    /** to avoid the factory lookup for every parser */
+    private static final SAXParserFactory SAX_NON_VALIDATING;
+
+    static {
+        SAX_NON_VALIDATING = sax();
+        SAX_NON_VALIDATING.setValidating(false);
+        SAX_NON_VALIDATING.setNamespaceAware(false);
+    }
+
     public static SAXParser saxParser(Node schema) throws IOException {
         SAXParserFactory factory;
         SAXParser parser;
@@ -61,13 +70,10 @@ public class Factories {
     }
 
     public static SAXParser saxParser() {
-        SAXParserFactory factory;
-
-        factory = sax();
-        factory.setValidating(false);
-        factory.setNamespaceAware(false);
         try {
-            return factory.newSAXParser();
+            synchronized (SAX_NON_VALIDATING) {
+                return SAX_NON_VALIDATING.newSAXParser();
+            }
         } catch (ParserConfigurationException | SAXException e) {
             throw new RuntimeException(e);
         }
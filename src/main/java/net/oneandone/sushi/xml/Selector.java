@@ -27,21 +27,34 @@ import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Thread-safe. Compiled expressions are cached per thread because XPathExpressions are not thread-safe; caches are bounded.
+ */
 public class Selector {
-    private final XPathFactory factory;
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    private final int cacheSize;
     private final Map<String, String[]> simples;
-    private final Map<String, XPathExpression> normals;
-    private NamespaceContext namespaceContext;
+    private final ThreadLocal<Compiler> compilers;
+    private volatile NamespaceContext namespaceContext;
 
     public Selector() {
-        this.factory = XPathFactory.newInstance();
-        this.simples = new HashMap<>();
-        this.normals = new HashMap<>();
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    public Selector(int cacheSize) {
+        this.cacheSize = cacheSize;
+        this.simples = new ConcurrentHashMap<>();
+        this.compilers = ThreadLocal.withInitial(() -> new Compiler(cacheSize));
         this.namespaceContext = null;
     }
 
@@ -59,10 +72,19 @@ public class Selector {
         }
     }
 
+    /** Like nodes, but the result is read-only and - for non-simple paths - not copied from the underlying NodeList. */
+    public List<Node> nodesView(Node context, String path) {
+        if (context instanceof Element && isSimple(path)) {
+            return Collections.unmodifiableList(nodesSimple((Element) context, path));
+        } else {
+            return new NodeListView(evaluate(context, path));
+        }
+    }
+
     public Node node(Node context, String xpath) {
         List<Node> result;
 
-        result = nodes(context, xpath);
+        result = nodesView(context, xpath);
         if (result.size() == 0) {
             return null;
         } else {
@@ -133,7 +155,7 @@ public class Selector {
     public String stringOpt(Node ele, String path) throws XmlException {
         List<Node> lst;
 
-        lst = nodes(ele, path);
+        lst = nodesView(ele, path);
         switch (lst.size()) {
         case 0:
             return null;
@@ -152,7 +174,9 @@ public class Selector {
         steps = simples.get(path);
         if (steps == null) {
             steps = Strings.toArray(Filesystem.SEPARATOR.split(path));
-            simples.put(path, steps);
+            if (simples.size() < cacheSize) {
+                simples.put(path, steps);
+            }
         }
         return Dom.getChildElements(context, steps);
     }
@@ -162,11 +186,7 @@ public class Selector {
         NodeList nodes;
         List<Node> result;
 
-        try {
-            nodes = (NodeList) compile(expression).evaluate(context, XPathConstants.NODESET);
-        } catch (XPathExpressionException e) {
-            throw new RuntimeException("invalid xpath: " + expression, e);
-        }
+        nodes = evaluate(context, expression);
         size = nodes.getLength();
         result = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
@@ -204,24 +224,98 @@ public class Selector {
         return true;
     }
 
-    private XPathExpression compile(String path) {
-        XPathExpression cached;
-        XPath xpath;
+    private NodeList evaluate(Node context, String expression) {
+        try {
+            return (NodeList) compilers.get().compile(expression, namespaceContext).evaluate(context, XPathConstants.NODESET);
+        } catch (XPathExpressionException e) {
+            throw new RuntimeException("invalid xpath: " + expression, e);
+        }
+    }
+
+    /** Per-thread factory and LRU cache of compiled expressions. */
+    private static class Compiler {
+        private final XPathFactory factory;
+        private final Map<Key, XPathExpression> cache;
+
+        Compiler(int size) {
+            this.factory = XPathFactory.newInstance();
+            this.cache = new LinkedHashMap<Key, XPathExpression>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, XPathExpression> eldest) {
+                    return size() > size;
+                }
+            };
+        }
 
-        cached = normals.get(path);
-        if (cached == null) {
-            xpath = factory.newXPath();
-            if (namespaceContext != null) {
-                xpath.setNamespaceContext(namespaceContext);
+        public XPathExpression compile(String path, NamespaceContext namespaceContext) {
+            Key key;
+            XPathExpression cached;
+            XPath xpath;
+
+            key = new Key(path, namespaceContext);
+            cached = cache.get(key);
+            if (cached == null) {
+                xpath = factory.newXPath();
+                if (namespaceContext != null) {
+                    xpath.setNamespaceContext(namespaceContext);
+                }
+                try {
+                    cached = xpath.compile(path);
+                } catch (XPathExpressionException e) {
+                    throw new RuntimeException("invalid xpath: " + path, e);
+                }
+                cache.put(key, cached);
             }
-            try {
-                cached = xpath.compile(path);
-            } catch (XPathExpressionException e) {
-                throw new RuntimeException("invalid xpath: " + path, e);
+            return cached;
+        }
+    }
+
+    private static class Key {
+        private final String path;
+        /** compared by identity */
+        private final NamespaceContext namespaceContext;
+
+        Key(String path, NamespaceContext namespaceContext) {
+            this.path = path;
+            this.namespaceContext = namespaceContext;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            Key key;
+
+            if (obj instanceof Key) {
+                key = (Key) obj;
+                return path.equals(key.path) && namespaceContext == key.namespaceContext;
             }
-            normals.put(path, cached);
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() ^ System.identityHashCode(namespaceContext);
         }
-        return cached;
     }
 
+    /** Read-only list backed by a NodeList */
+    private static class NodeListView extends AbstractList<Node> implements RandomAccess {
+        private final NodeList nodes;
+
+        NodeListView(NodeList nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public Node get(int index) {
+            if (index < 0 || index >= nodes.getLength()) {
+                throw new IndexOutOfBoundsException(Integer.toString(index));
+            }
+            return nodes.item(index);
+        }
+
+        @Override
+        public int size() {
+            return nodes.getLength();
+        }
+    }
 }
@@ -258,7 +258,7 @@ public class Serializer {
         }
     }
 
-    public static Templates templates(Source src) throws TransformerConfigurationException {
+    public static synchronized Templates templates(Source src) throws TransformerConfigurationException {
         return FACTORY.newTemplates(src);
     }
 
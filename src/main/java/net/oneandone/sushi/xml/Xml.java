@@ -15,39 +15,46 @@
  */
 package net.oneandone.sushi.xml;
 
+import javax.xml.parsers.SAXParser;
+
 /**
- * <p>Xml processing stuff. Not thread-save - every thread should have it's own instance.
- * Creates members lazy because they are resource comsuming. </p>
+ * <p>Xml processing stuff. Thread-safe: builders, serializers and sax parsers are not, so they are kept in thread
+ * locals - every thread creates its own instances on first use; don't pass them to other threads. The selector is
+ * thread-safe, created with this object and shared by all threads. </p>
  */
 public class Xml {
-    private Builder builder;
-    private Selector selector;
-    private Serializer serializer;
+    private final ThreadLocal<Builder> builders;
+    private final Selector selector;
+    private final ThreadLocal<Serializer> serializers;
+    private final ThreadLocal<SAXParser> saxParsers;
 
     public Xml() {
-        this.builder = null;
-        this.selector = null;
-        this.serializer = null;
+        this.builders = ThreadLocal.withInitial(Builder::new);
+        this.selector = new Selector();
+        this.serializers = ThreadLocal.withInitial(Serializer::new);
+        this.saxParsers = ThreadLocal.withInitial(Factories::saxParser);
     }
 
+    /** @return builder for the current thread */
     public Builder getBuilder() {
-        if (builder == null) {
-            builder = new Builder();
-        }
-        return builder;
+        return builders.get();
     }
 
     public Selector getSelector() {
-        if (selector == null) {
-            selector = new Selector();
-        }
         return selector;
     }
 
+    /** @return serializer for the current thread */
     public Serializer getSerializer() {
-        if (serializer == null) {
-            serializer = new Serializer();
-        }
-        return serializer;
+        return serializers.get();
+    }
+
+    /** @return non-validating parser for the current thread; has to be used before asking for the parser again */
+    public SAXParser getSaxParser() {
+        SAXParser result;
+
+        result = saxParsers.get();
+        result.reset();
+        return result;
     }
 }
@@ -34,6 +34,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.attribute.GroupPrincipal;
 import java.nio.file.attribute.UserPrincipal;
 import java.util.ArrayList;
@@ -42,6 +44,13 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -64,6 +73,142 @@ public abstract class NodeTest<T extends Node> extends NodeReadOnlyTest<T> {
         assertEquals(0, children.size());
     }
 
+    @Test
+    public void attributes() throws IOException {
+        Node file;
+        Attributes attributes;
+
+        assertFalse(work.join("nosuchfile").getAttributes().exists);
+        attributes = work.getAttributes();
+        assertTrue(attributes.exists);
+        assertTrue(attributes.directory);
+        assertFalse(attributes.file);
+        file = work.join("file").writeString("abc");
+        attributes = file.getAttributes();
+        assertTrue(attributes.exists);
+        assertTrue(attributes.file);
+        assertFalse(attributes.directory);
+        assertFalse(attributes.link);
+        assertEquals(3, attributes.size);
+        assertEquals(file.getLastModified(), attributes.lastModified);
+        if (work.getRoot().getFilesystem().getFeatures().modes) {
+            assertEquals(file.getPermissions(), attributes.permissions);
+        }
+    }
+
+    @Test
+    public void mapAndByteChannel() throws IOException {
+        Node file;
+        ByteBuffer buffer;
+        SeekableByteChannel channel;
+
+        file = work.join("file").writeString("0123456789");
+        buffer = file.map();
+        assertEquals(10, buffer.remaining());
+        assertEquals('0', buffer.get(0));
+        assertEquals('9', buffer.get(9));
+        channel = file.newByteChannel();
+        assertEquals(10, channel.size());
+        buffer = ByteBuffer.allocate(3);
+        channel.position(5);
+        assertEquals(3, channel.read(buffer));
+        assertEquals("567", new String(buffer.array(), "US-ASCII"));
+        channel.position(1);
+        buffer.clear();
+        assertEquals(3, channel.read(buffer));
+        assertEquals("123", new String(buffer.array(), "US-ASCII"));
+        assertEquals(4, channel.position());
+        channel.close();
+        assertFalse(channel.isOpen());
+        try {
+            work.join("nosuchfile").map();
+            fail();
+        } catch (FileNotFoundException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void atomicOutputStream() throws IOException {
+        Node file;
+        OutputStream out;
+
+        file = work.join("file").writeString("old");
+        out = file.newAtomicOutputStream(true);
+        out.write("new".getBytes("US-ASCII"));
+        if (out instanceof AtomicOutputStream) {
+            assertEquals("old", file.readString());
+        }
+        out.close();
+        out.close();
+        assertEquals("new", file.readString());
+        assertEquals(Arrays.asList(file), work.list());
+        out = file.newAtomicOutputStream();
+        out.write("aborted".getBytes("US-ASCII"));
+        if (out instanceof AtomicOutputStream) {
+            ((AtomicOutputStream) out).abort();
+            assertEquals("new", file.readString());
+            assertEquals(Arrays.asList(file), work.list());
+        } else {
+            out.close();
+        }
+        try (Writer writer = work.join("created").newAtomicWriter()) {
+            writer.write("created");
+        }
+        assertEquals("created", work.join("created").readString());
+        try {
+            work.newAtomicOutputStream();
+            fail();
+        } catch (NewDirectoryOutputStreamException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void async() throws Exception {
+        Node file;
+        Node copy;
+
+        file = work.join("file");
+        file.writeBytesAsync((byte) 1, (byte) 2, (byte) 3).get();
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, (byte[]) file.readBytesAsync().get()));
+        assertEquals(3L, (long) file.sizeAsync().get());
+        copy = work.join("copy");
+        file.copyAsync(copy).get();
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, copy.readBytes()));
+        file.writeBytesAsync().get();
+        assertEquals(0, ((byte[]) file.readBytesAsync().get()).length);
+        try {
+            work.join("nosuchfile").readBytesAsync().get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FileNotFoundException);
+        }
+    }
+
+    @Test
+    public void asyncCancel() throws Exception {
+        CountDownLatch started;
+        CountDownLatch interrupted;
+        CompletableFuture<Void> future;
+
+        started = new CountDownLatch(1);
+        interrupted = new CountDownLatch(1);
+        future = work.getRoot().getFilesystem().submit(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(60000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertTrue(future.cancel(true));
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        assertTrue(future.isCancelled());
+    }
+
     //-- create via world.node etc
 
     @Test
@@ -1010,6 +1155,63 @@ public abstract class NodeTest<T extends Node> extends NodeReadOnlyTest<T> {
         }
     }
 
+    @Test
+    public void deleteTreeParallel() throws IOException {
+        Node dir;
+
+        dir = work.join("tree");
+        for (int i = 0; i < 4; i++) {
+            dir.join("sub" + i, "nested").mkdirs();
+            dir.join("sub" + i, "file").writeString("a");
+            dir.join("sub" + i, "nested", "file").writeString("b");
+        }
+        dir.deleteTree(3);
+        assertFalse(dir.exists());
+        try {
+            dir.deleteTree(3);
+            fail();
+        } catch (NodeNotFoundException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void deleteTreeInBackground() throws Exception {
+        Node dir;
+
+        dir = work.join("tree");
+        dir.join("sub", "nested").mkdirs();
+        dir.join("sub", "file").writeString("a");
+        dir.deleteTreeInBackground(2).get();
+        assertFalse(dir.exists());
+        assertEquals(0, work.list().size());
+    }
+
+    @Test
+    public void watch() throws Exception {
+        BlockingQueue<List<T>> changes;
+        Consumer<List<T>> callback;
+        Node file;
+        List<T> changed;
+
+        changes = new LinkedBlockingQueue<>();
+        callback = changes::add;
+        work.join("dir").mkdir();
+        try (Watch<T> watch = work.watch(50, callback)) {
+            assertEquals(work, watch.getRoot());
+            file = work.join("dir", "file").writeString("a");
+            do {
+                changed = changes.poll(10, TimeUnit.SECONDS);
+                assertNotNull(changed);
+            } while (!changed.contains(file));
+            file.deleteFile();
+            do {
+                changed = changes.poll(10, TimeUnit.SECONDS);
+                assertNotNull(changed);
+            } while (!changed.contains(file));
+        }
+    }
+
     @Test(expected = FileNotFoundException.class)
     public void deleteFileNotFound() throws IOException {
         work.join("somedir").deleteFile();
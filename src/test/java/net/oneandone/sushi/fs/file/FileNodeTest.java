@@ -18,15 +18,24 @@ package net.oneandone.sushi.fs.file;
 import net.oneandone.sushi.fs.FileNotFoundException;
 import net.oneandone.sushi.fs.Node;
 import net.oneandone.sushi.fs.NodeTest;
+import net.oneandone.sushi.fs.Watch;
 import net.oneandone.sushi.io.OS;
 import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.NoSuchFileException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -225,5 +234,59 @@ public class FileNodeTest extends NodeTest<FileNode> {
         tmp = work.createTempDirectory();
         assertEquals(0, tmp.list().size());
     }
-}
 
+    @Test
+    public void atomicKeepsMode() throws IOException {
+        FileNode file;
+
+        if (WORLD.os == OS.WINDOWS) {
+            return;
+        }
+        file = work.join("file").writeString("old");
+        file.setPermissions("rwxr-x---");
+        try (OutputStream dest = file.newAtomicOutputStream()) {
+            dest.write('n');
+        }
+        assertEquals("n", file.readString());
+        assertEquals("rwxr-x---", file.getPermissions());
+        assertEquals(1, work.list().size());
+    }
+
+    @Test
+    public void diffLarge() throws IOException {
+        byte[] data;
+        FileNode left;
+        FileNode right;
+
+        data = new byte[2 * 1024 * 1024];
+        data[data.length - 1] = 1;
+        left = work.join("left").writeBytes(data);
+        right = work.join("right").writeBytes(data);
+        assertFalse(left.diff(right));
+        data[data.length - 1] = 2;
+        right.writeBytes(data);
+        assertTrue(left.diff(right));
+    }
+
+    @Test
+    public void watchNewDirectory() throws Exception {
+        BlockingQueue<List<FileNode>> changes;
+        Set<FileNode> all;
+        FileNode file;
+        List<FileNode> changed;
+
+        changes = new LinkedBlockingQueue<>();
+        all = new HashSet<>();
+        try (Watch<FileNode> watch = work.watch(200, changes::add)) {
+            assertEquals(work, watch.getRoot());
+            // file is created before the new directory is registered
+            file = work.join("a/b").mkdirs().join("file").writeString("x");
+            do {
+                changed = changes.poll(10, TimeUnit.SECONDS);
+                assertNotNull(changed);
+                all.addAll(changed);
+            } while (!all.contains(file));
+            assertTrue(all.contains(work.join("a/b")));
+        }
+    }
+}
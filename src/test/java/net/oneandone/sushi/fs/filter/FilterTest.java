@@ -17,10 +17,12 @@ package net.oneandone.sushi.fs.filter;
 
 import net.oneandone.sushi.fs.Node;
 import net.oneandone.sushi.fs.World;
+import net.oneandone.sushi.fs.file.FileNode;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
@@ -112,6 +114,73 @@ public class FilterTest {
         assertEquals(root.join("b"), nodes.get(0));
     }
 
+    @Test
+    public void predicateCachedAttributes() throws IOException {
+        List<Node> nodes;
+
+        create("a", "b/c", "b/d");
+        nodes = (List) root.find(root.getWorld().filter().include("**/*").cacheAttributes().predicate(Predicate.FILE));
+        assertEquals(3, nodes.size());
+        nodes = (List) root.find(root.getWorld().filter().include("**/*").cacheAttributes().predicate(Predicate.DIRECTORY));
+        assertEquals(1, nodes.size());
+        assertEquals(root.join("b"), nodes.get(0));
+    }
+
+    @Test
+    public void index() throws IOException {
+        ScanIndex index;
+        long old;
+
+        index = new ScanIndex((FileNode) root.getWorld().getTemp().createTempDirectory());
+        create("a", "b/c", "b/d/e");
+        old = System.currentTimeMillis() - 60000;
+        root.setLastModified(old);
+        root.join("b").setLastModified(old);
+        root.join("b/d").setLastModified(old);
+        check(filter().include("**/*").index(index), "a", "b", "b/c", "b/d", "b/d/e");
+        // unchanged modification time: the recorded listing is replayed
+        create("b/d/f");
+        root.join("b/d").setLastModified(old);
+        check(filter().include("**/*").index(index), "a", "b", "b/c", "b/d", "b/d/e");
+        // changed modification time: listed again
+        root.join("b/d").setLastModified(old + 1000);
+        check(filter().include("**/*").index(index), "a", "b", "b/c", "b/d", "b/d/e", "b/d/f");
+        check(filter().include("**/*"), "a", "b", "b/c", "b/d", "b/d/e", "b/d/f");
+    }
+
+    @Test
+    public void indexRecordedTooEarly() throws Exception {
+        ScanIndex index;
+        long recent;
+
+        index = new ScanIndex((FileNode) root.getWorld().getTemp().createTempDirectory());
+        create("a");
+        recent = System.currentTimeMillis() - 1500;
+        root.setLastModified(recent);
+        check(filter().include("**/*").index(index), "a");
+        Thread.sleep(1000);
+        // same modification time, but the recording walk was too close to it
+        create("b");
+        root.setLastModified(recent);
+        check(filter().include("**/*").index(index), "a", "b");
+    }
+
+    @Test
+    public void indexCorrupt() throws IOException {
+        ScanIndex index;
+        long old;
+
+        index = new ScanIndex((FileNode) root.getWorld().getTemp().createTempDirectory());
+        create("a", "b/c");
+        old = System.currentTimeMillis() - 60000;
+        root.setLastModified(old);
+        check(filter().include("**/*").index(index), "a", "b", "b/c");
+        for (FileNode file : index.getDirectory().list()) {
+            file.writeBytes(Arrays.copyOf(file.readBytes(), (int) file.size() - 3));
+        }
+        check(filter().include("**/*").index(index), "a", "b", "b/c");
+    }
+
     @Test
     public void depth() throws IOException {
         create("a", "b/c", "b/d/e");
@@ -0,0 +1,125 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.http;
+
+import net.oneandone.sushi.fs.FileNotFoundException;
+import net.oneandone.sushi.fs.World;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncTest {
+    private World world;
+    private LocalServer server;
+    private HttpFilesystem filesystem;
+
+    @Before
+    public void before() throws Exception {
+        world = World.create(false);
+        server = new LocalServer();
+        filesystem = (HttpFilesystem) world.getFilesystem("http");
+        server.files.put("/dir/a", "a".getBytes());
+        server.files.put("/dir/b", "bb".getBytes());
+    }
+
+    @After
+    public void after() {
+        server.close();
+    }
+
+    @Test
+    public void socket() throws Exception {
+        check();
+    }
+
+    @Test
+    public void async() throws Exception {
+        filesystem.setAsync(true);
+        check();
+    }
+
+    @Test
+    public void asyncDav() throws Exception {
+        filesystem.setAsync(true);
+        server.dav = true;
+        check();
+        assertTrue(server.requests.contains("PROPFIND /dir/b"));
+    }
+
+    @Test
+    public void asyncGzip() throws Exception {
+        filesystem.setAsync(true);
+        filesystem.setAcceptEncoding(true);
+        server.gzip = true;
+        assertArrayEquals("bb".getBytes(), server.node(world, "dir/b").readBytesAsync().get());
+        assertTrue(filesystem.getContentCoding().getReceivedCompressed() > 0);
+    }
+
+    @Test
+    public void many() throws Exception {
+        List<CompletableFuture<byte[]>> futures;
+        HttpNode node;
+
+        filesystem.setAsync(true);
+        node = server.node(world, "dir/b");
+        futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(node.readBytesAsync());
+        }
+        for (CompletableFuture<byte[]> future : futures) {
+            assertArrayEquals("bb".getBytes(), future.get());
+        }
+    }
+
+    private void check() throws Exception {
+        HttpNode dir;
+        List<String> names;
+
+        dir = server.node(world, "dir");
+        assertTrue(dir.join("a").existsAsync().get());
+        assertFalse(dir.join("nosuchfile").existsAsync().get());
+        assertEquals(2L, (long) dir.join("b").sizeAsync().get());
+        assertArrayEquals("a".getBytes(), dir.join("a").readBytesAsync().get());
+        try {
+            dir.join("nosuchfile").readBytesAsync().get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FileNotFoundException);
+        }
+        dir.join("c").putAsync("ccc".getBytes()).get();
+        assertEquals("ccc", new String(server.files.get("/dir/c")));
+        if (server.dav) {
+            names = new ArrayList<>();
+            for (HttpNode child : dir.listAsync().get()) {
+                names.add(child.getName());
+            }
+            Collections.sort(names);
+            assertEquals("[a, b, c]", names.toString());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.http;
+
+import net.oneandone.sushi.fs.World;
+import net.oneandone.sushi.fs.http.io.ContentCoding;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ContentCodingTest {
+    private World world;
+    private LocalServer server;
+    private HttpFilesystem filesystem;
+    private String text;
+
+    @Before
+    public void before() throws Exception {
+        StringBuilder builder;
+
+        world = World.create(false);
+        server = new LocalServer();
+        server.gzip = true;
+        filesystem = (HttpFilesystem) world.getFilesystem("http");
+        builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("line ").append(i).append('\n');
+        }
+        text = builder.toString();
+        server.files.put("/file", text.getBytes());
+    }
+
+    @After
+    public void after() {
+        server.close();
+    }
+
+    @Test
+    public void notAccepted() throws Exception {
+        assertEquals(text, server.node(world, "file").readString());
+        assertNull(server.requestHeaders.get(0).getFirst("Accept-Encoding"));
+    }
+
+    @Test
+    public void get() throws Exception {
+        ContentCoding coding;
+        HttpNode node;
+
+        filesystem.setAcceptEncoding(true);
+        coding = filesystem.getContentCoding();
+        node = server.node(world, "file");
+        assertEquals(text, node.readString());
+        assertEquals(text.length(), coding.getReceivedDecoded());
+        assertTrue(coding.getReceivedCompressed() < text.length() / 3);
+        // range requests are not affected
+        try (InputStream src = node.newInputStream(5, 4)) {
+            assertEquals("0\nli", new String(src.readAllBytes()));
+        }
+        // closing early leaves the connection usable
+        try (InputStream src = node.newInputStream()) {
+            assertEquals('l', src.read());
+        }
+        assertEquals(text, node.readString());
+        assertEquals(0, node.getRoot().getAllocated());
+    }
+
+    @Test
+    public void requests() throws Exception {
+        ContentCoding coding;
+        HttpNode node;
+
+        filesystem.setAcceptEncoding(true);
+        filesystem.setCompressRequests(true);
+        coding = filesystem.getContentCoding();
+        node = server.node(world, "uploaded");
+        node.writeString(text);
+        assertEquals(text, new String(server.files.get("/uploaded")));
+        assertEquals(text, node.post(text));
+        assertEquals(2 * text.length(), coding.getSentRaw());
+        assertTrue(coding.getSentCompressed() < coding.getSentRaw() / 3);
+        assertEquals(0, node.getRoot().getAllocated());
+    }
+
+    @Test
+    public void propfind() throws Exception {
+        filesystem.setAcceptEncoding(true);
+        server.dav = true;
+        server.files.put("/dir/a", new byte[0]);
+        assertEquals(1, server.node(world, "dir").list().size());
+        assertEquals(text.length(), server.node(world, "file").size());
+        assertTrue(filesystem.getContentCoding().getReceivedCompressed() > 0);
+    }
+}
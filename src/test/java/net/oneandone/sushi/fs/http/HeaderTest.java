@@ -0,0 +1,120 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.http;
+
+import net.oneandone.sushi.fs.http.io.AsciiInputStream;
+import net.oneandone.sushi.fs.http.model.Header;
+import net.oneandone.sushi.fs.http.model.HeaderList;
+import net.oneandone.sushi.fs.http.model.ProtocolException;
+import net.oneandone.sushi.fs.http.model.Response;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class HeaderTest {
+    private static final String RESPONSE = "HTTP/1.1 207 Multi-Status\r\n"
+            + "content-length: 12\r\n"
+            + "Content-Type:text/xml \r\n"
+            + "Connection: close\r\n"
+            + "X-Custom:   some value\r\n"
+            + "Transfer-Encoding: chunked\n"
+            + "Empty:\r\n"
+            + "\r\n"
+            + "body";
+
+    @Test
+    public void response() throws IOException {
+        for (int size : new int[] { 1, 7, 16, 100, 1000 }) {
+            check(size);
+        }
+    }
+
+    private void check(int bufferSize) throws IOException {
+        AsciiInputStream src;
+        Response response;
+        HeaderList list;
+
+        src = stream(RESPONSE, bufferSize);
+        response = Response.parse(null, src);
+        assertEquals(207, response.getStatusLine().code);
+        list = response.getHeaderList();
+        assertSame(Header.CONTENT_LENGTH, list.getFirst("Content-Length").name);
+        assertEquals("12", list.getFirstValue(Header.CONTENT_LENGTH));
+        assertEquals("12", list.getFirstValue("CONTENT-LENGTH"));
+        assertEquals("text/xml", list.getFirstValue(Header.CONTENT_TYPE));
+        assertEquals("close", list.getFirstValue(Header.CONNECTION));
+        assertEquals("chunked", list.getFirstValue(Header.TRANSFER_ENCODING));
+        assertEquals("some value", list.getFirstValue("x-custom"));
+        assertEquals("", list.getFirstValue("Empty"));
+        assertNull(list.getFirstValue("Location"));
+        assertEquals('b', src.read());
+    }
+
+    @Test
+    public void first() {
+        HeaderList list;
+
+        list = new HeaderList();
+        list.add("connection", "keep-alive");
+        list.add("Connection", "close");
+        assertEquals("keep-alive", list.getFirstValue(Header.CONNECTION));
+    }
+
+    @Test
+    public void lines() throws IOException {
+        AsciiInputStream src;
+
+        src = stream("a\r\n\r\nb\nc", 3);
+        assertEquals("a", src.readLine());
+        assertEquals("", src.readLine());
+        assertEquals("b", src.readLine());
+        try {
+            src.readLine();
+            fail();
+        } catch (IOException e) {
+            // truncated
+        }
+        assertNull(stream("", 3).readLine());
+    }
+
+    @Test
+    public void eof() throws IOException {
+        assertNull(stream("", 10).readHeader());
+    }
+
+    @Test
+    public void invalid() throws IOException {
+        for (String str : new String[] { "A: 1\r\n  2\r\n\r\n", "A\r\n\r\n", ": 1\r\n\r\n" }) {
+            try {
+                HeaderList.parse(stream(str, 100));
+                fail(str);
+            } catch (ProtocolException e) {
+                // ok
+            }
+        }
+    }
+
+    private static AsciiInputStream stream(String str, int bufferSize) {
+        return new AsciiInputStream(new ByteArrayInputStream(str.getBytes(StandardCharsets.US_ASCII)), bufferSize);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.http;
+
+import net.oneandone.sushi.fs.World;
+import net.oneandone.sushi.fs.file.FileNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class HttpCacheTest {
+    private World world;
+    private LocalServer server;
+    private HttpNode node;
+
+    @Before
+    public void before() throws Exception {
+        world = World.create(false);
+        server = new LocalServer();
+        server.files.put("/file", "hello".getBytes());
+        node = server.node(world, "file");
+    }
+
+    @After
+    public void after() {
+        server.close();
+    }
+
+    @Test
+    public void revalidate() throws IOException {
+        HttpCache cache;
+
+        cache = new HttpCache(1024);
+        node.getRoot().getFilesystem().setCache(cache);
+        assertEquals("hello", node.readString());
+        assertEquals(1, cache.getMisses());
+        assertEquals("hello", node.readString());
+        assertEquals(1, cache.getRevalidated());
+        assertEquals("\"" + Arrays.hashCode("hello".getBytes()) + "\"", lastHeader("If-None-Match"));
+        server.files.put("/file", "modified".getBytes());
+        assertEquals("modified", node.readString());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, node.getRoot().getAllocated());
+    }
+
+    @Test
+    public void maxAge() throws IOException {
+        HttpCache cache;
+        int requests;
+
+        cache = new HttpCache(1024);
+        node.getRoot().getFilesystem().setCache(cache);
+        server.cacheControl = "public, max-age=3600";
+        assertEquals("hello", node.readString());
+        requests = server.requests.size();
+        assertEquals("hello", node.readString());
+        assertEquals(requests, server.requests.size());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void noStore() throws IOException {
+        HttpCache cache;
+
+        cache = new HttpCache(1024);
+        node.getRoot().getFilesystem().setCache(cache);
+        server.cacheControl = "no-store";
+        assertEquals("hello", node.readString());
+        assertEquals("hello", node.readString());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getMemoryUsed());
+        assertEquals(0, node.getRoot().getAllocated());
+    }
+
+    @Test
+    public void tooLargeForMemory() throws IOException {
+        HttpCache cache;
+
+        // memory only, entry larger than a quarter of the memory
+        cache = new HttpCache(8);
+        node.getRoot().getFilesystem().setCache(cache);
+        assertEquals("hello", node.readString());
+        assertEquals("hello", node.readString());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getRevalidated());
+        assertEquals(0, cache.getMemoryUsed());
+        assertEquals(0, node.getRoot().getAllocated());
+    }
+
+    @Test
+    public void disk() throws IOException {
+        FileNode dir;
+        HttpCache cache;
+
+        dir = world.getTemp().createTempDirectory();
+        // memory too small for the entry
+        cache = new HttpCache(8, dir);
+        node.getRoot().getFilesystem().setCache(cache);
+        assertEquals("hello", node.readString());
+        assertEquals(0, cache.getMemoryUsed());
+        assertEquals(2, dir.list().size());
+
+        // a new cache instance finds the entry on disk
+        cache = new HttpCache(1024, dir);
+        node.getRoot().getFilesystem().setCache(cache);
+        assertEquals("hello", node.readString());
+        assertEquals(1, cache.getRevalidated());
+        assertEquals(0, cache.getMisses());
+        cache.clear();
+        assertEquals(0, dir.list().size());
+        dir.deleteTree();
+    }
+
+    private String lastHeader(String name) {
+        return server.requestHeaders.get(server.requestHeaders.size() - 1).getFirst(name);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.http;
+
+import net.oneandone.sushi.fs.Attributes;
+import net.oneandone.sushi.fs.Node;
+import net.oneandone.sushi.fs.World;
+import net.oneandone.sushi.fs.filter.Filter;
+import net.oneandone.sushi.fs.filter.Predicate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ListTreeTest {
+    private World world;
+    private LocalServer server;
+
+    @Before
+    public void before() throws Exception {
+        world = World.create(false);
+        server = new LocalServer();
+        server.dav = true;
+        server.files.put("/t/a.txt", "a".getBytes());
+        server.files.put("/t/sub/b.txt", "bb".getBytes());
+        server.files.put("/t/sub/deeper/c.txt", "ccc".getBytes());
+        server.files.put("/t/other/d.java", "d".getBytes());
+    }
+
+    @After
+    public void after() {
+        server.close();
+    }
+
+    @Test
+    public void infinity() throws Exception {
+        HttpNode dir;
+        Map<String, List<HttpNode>> tree;
+        Map<String, Attributes> attributes;
+        Attributes c;
+
+        dir = server.node(world, "t");
+        attributes = new HashMap<>();
+        tree = dir.listTree(Integer.MAX_VALUE, attributes);
+        assertEquals(1, server.requests.size());
+        check(tree);
+        c = attributes.get("t/sub/deeper/c.txt");
+        assertTrue(c.exists);
+        assertTrue(c.file);
+        assertFalse(c.directory);
+        assertEquals(3, c.size);
+        assertTrue(attributes.get("t/sub").directory);
+        assertEquals(0, dir.getRoot().getAllocated());
+    }
+
+    @Test
+    public void noStaleNodes() throws Exception {
+        HttpNode c;
+
+        c = server.node(world, "t").listTree(Integer.MAX_VALUE).get("t/sub/deeper").get(0);
+        server.files.remove("/t/sub/deeper/c.txt");
+        assertFalse(c.exists());
+    }
+
+    @Test
+    public void refused() throws Exception {
+        HttpNode dir;
+
+        server.refuseInfinity = true;
+        dir = server.node(world, "t");
+        check(dir.listTree(Integer.MAX_VALUE));
+        // infinity + one request per directory
+        assertEquals(5, server.requests.size());
+        assertEquals(0, dir.getRoot().getAllocated());
+    }
+
+    @Test
+    public void bounded() throws Exception {
+        HttpNode dir;
+        Map<String, List<HttpNode>> tree;
+
+        dir = server.node(world, "t");
+        tree = dir.listTree(1);
+        assertEquals(1, server.requests.size());
+        assertEquals(3, tree.get("t").size());
+        assertFalse(tree.containsKey("t/sub"));
+        assertTrue(tree.containsKey("t/a.txt"));
+    }
+
+    @Test
+    public void file() throws Exception {
+        Map<String, List<HttpNode>> tree;
+
+        tree = server.node(world, "t/a.txt").listTree(Integer.MAX_VALUE);
+        assertEquals(1, tree.size());
+        assertTrue(tree.containsKey("t/a.txt"));
+        assertNull(tree.get("t/a.txt"));
+    }
+
+    @Test
+    public void filter() throws Exception {
+        HttpNode dir;
+        List<String> names;
+
+        dir = server.node(world, "t");
+        names = new ArrayList<>();
+        for (Node node : dir.find(new Filter().include("**/*").predicate(Predicate.FILE))) {
+            names.add(node.getPath());
+        }
+        Collections.sort(names);
+        assertEquals("[t/a.txt, t/other/d.java, t/sub/b.txt, t/sub/deeper/c.txt]", names.toString());
+        assertEquals(1, server.requests.size());
+        server.requests.clear();
+        assertEquals(1, dir.find(new Filter().include("**/d.java")).size());
+        assertEquals(1, server.requests.size());
+        server.requests.clear();
+        // no bulk listing for literal paths
+        assertEquals(1, dir.find(new Filter().include("a.txt")).size());
+        assertEquals(1, server.requests.size());
+        assertTrue(server.requests.toString(), server.requests.get(0).startsWith("HEAD "));
+    }
+
+    private static void check(Map<String, List<HttpNode>> tree) {
+        assertEquals(3, tree.get("t").size());
+        assertEquals(2, tree.get("t/sub").size());
+        assertEquals(1, tree.get("t/sub/deeper").size());
+        assertEquals(1, tree.get("t/other").size());
+        assertTrue(tree.containsKey("t/a.txt"));
+        assertNull(tree.get("t/a.txt"));
+        assertEquals(8, tree.size());
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.http;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.oneandone.sushi.fs.World;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Minimal in-process http server for tests: serves and stores files, supports range requests, POST and PATCH echo
+ * the request body. PROPFIND is supported if dav is enabled; directories are implicit.
+ */
+public class LocalServer implements AutoCloseable {
+    public final Map<String, byte[]> files;
+    /** method and path of all requests received */
+    public final List<String> requests;
+    public final List<Headers> requestHeaders;
+    public volatile boolean ranges;
+    /** number of range requests answered with partial content, later ones get the full content */
+    public final AtomicInteger rangeBudget;
+    public volatile boolean dav;
+    /** to answer Depth: infinity PROPFINDs with 403 */
+    public volatile boolean refuseInfinity;
+    /** to gzip responses if the client accepts it */
+    public volatile boolean gzip;
+    /** null for none */
+    public volatile String cacheControl;
+    private final HttpServer server;
+
+    public LocalServer() throws IOException {
+        this.files = new ConcurrentHashMap<>();
+        this.requests = new CopyOnWriteArrayList<>();
+        this.requestHeaders = new CopyOnWriteArrayList<>();
+        this.ranges = true;
+        this.rangeBudget = new AtomicInteger(Integer.MAX_VALUE);
+        this.dav = false;
+        this.refuseInfinity = false;
+        this.gzip = false;
+        this.cacheControl = null;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public HttpNode node(World world, String path) throws Exception {
+        HttpNode node;
+
+        node = (HttpNode) world.node(URI.create("http://localhost:" + server.getAddress().getPort() + "/" + path));
+        return node;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path;
+        byte[] data;
+
+        path = exchange.getRequestURI().getPath();
+        requests.add(exchange.getRequestMethod() + " " + path);
+        requestHeaders.add(exchange.getRequestHeaders());
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            // the jdk server drops the connection after responses without body; tell the client
+            exchange.getResponseHeaders().add("Connection", "close");
+        }
+        try {
+            switch (exchange.getRequestMethod()) {
+                case "PUT":
+                    files.put(path, requestBody(exchange));
+                    empty(exchange, 201);
+                    return;
+                case "HEAD":
+                case "GET":
+                    data = files.get(path);
+                    if (data == null) {
+                        empty(exchange, 404);
+                    } else {
+                        get(exchange, data);
+                    }
+                    return;
+                case "POST":
+                case "PATCH":
+                    respond(exchange, 200, requestBody(exchange));
+                    return;
+                case "PROPFIND":
+                    if (dav) {
+                        propfind(exchange, path);
+                        return;
+                    }
+                    // fall-through
+                default:
+                    try (InputStream src = exchange.getRequestBody()) {
+                        src.readAllBytes();
+                    }
+                    empty(exchange, 405);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void get(HttpExchange exchange, byte[] data) throws IOException {
+        String range;
+        String etag;
+        boolean head;
+        long first;
+        long last;
+        int idx;
+
+        head = "HEAD".equals(exchange.getRequestMethod());
+        etag = "\"" + Arrays.hashCode(data) + "\"";
+        exchange.getResponseHeaders().add("ETag", etag);
+        if (cacheControl != null) {
+            exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+        }
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            // see HEAD
+            exchange.getResponseHeaders().add("Connection", "close");
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        range = exchange.getRequestHeaders().getFirst("Range");
+        first = 0;
+        last = data.length - 1;
+        if (ranges && range != null && range.startsWith("bytes=") && rangeBudget.getAndDecrement() > 0) {
+            range = range.substring(6);
+            idx = range.indexOf('-');
+            first = Long.parseLong(range.substring(0, idx));
+            if (idx + 1 < range.length()) {
+                last = Math.min(last, Long.parseLong(range.substring(idx + 1)));
+            }
+            if (first >= data.length) {
+                exchange.getResponseHeaders().add("Content-Range", "bytes */" + data.length);
+                empty(exchange, 416);
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + first + "-" + last + "/" + data.length);
+            exchange.sendResponseHeaders(206, last - first + 1);
+        } else if (head) {
+            exchange.getResponseHeaders().add("Content-Length", Integer.toString(data.length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        } else if (gzip) {
+            respond(exchange, 200, data);
+            return;
+        } else {
+            exchange.sendResponseHeaders(200, data.length == 0 ? 0 : data.length);
+        }
+        try (OutputStream dest = exchange.getResponseBody()) {
+            dest.write(data, (int) first, (int) (last - first + 1));
+        }
+    }
+
+    private void propfind(HttpExchange exchange, String path) throws IOException {
+        String body;
+        String depth;
+        String self;
+        String prefix;
+        Set<String> hrefs;
+        String rest;
+        int idx;
+        StringBuilder result;
+
+        body = new String(requestBody(exchange), StandardCharsets.UTF_8);
+        depth = exchange.getRequestHeaders().getFirst("Depth");
+        if (refuseInfinity && "infinity".equals(depth)) {
+            empty(exchange, 403);
+            return;
+        }
+        self = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        prefix = self + "/";
+        hrefs = new TreeSet<>();
+        if (files.containsKey(self)) {
+            if (path.endsWith("/")) {
+                empty(exchange, 404);
+                return;
+            }
+            hrefs.add(self);
+        } else {
+            for (String file : files.keySet()) {
+                if (file.startsWith(prefix)) {
+                    hrefs.add(prefix);
+                    if ("0".equals(depth)) {
+                        break;
+                    }
+                    rest = file.substring(prefix.length());
+                    idx = rest.indexOf('/');
+                    if ("1".equals(depth)) {
+                        hrefs.add(prefix + (idx == -1 ? rest : rest.substring(0, idx + 1)));
+                    } else {
+                        while (idx != -1) {
+                            hrefs.add(prefix + rest.substring(0, idx + 1));
+                            idx = rest.indexOf('/', idx + 1);
+                        }
+                        hrefs.add(file);
+                    }
+                }
+            }
+            if (hrefs.isEmpty()) {
+                empty(exchange, 404);
+                return;
+            }
+            if (!path.endsWith("/")) {
+                exchange.getResponseHeaders().add("Location", prefix);
+                empty(exchange, 301);
+                return;
+            }
+        }
+        result = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<D:multistatus xmlns:D=\"DAV:\">\n");
+        for (String href : hrefs) {
+            result.append("<D:response><D:href>").append(href).append("</D:href><D:propstat><D:prop>");
+            if (body.contains("resourcetype")) {
+                result.append(href.endsWith("/") ? "<D:resourcetype><D:collection/></D:resourcetype>" : "<D:resourcetype/>");
+            }
+            if (body.contains("getcontentlength") && !href.endsWith("/")) {
+                result.append("<D:getcontentlength>").append(files.get(href).length).append("</D:getcontentlength>");
+            }
+            if (body.contains("getlastmodified")) {
+                result.append("<D:getlastmodified>Thu, 01 Jan 2015 00:00:00 GMT</D:getlastmodified>");
+            }
+            if (body.contains("displayname")) {
+                result.append("<D:displayname>").append(href).append("</D:displayname>");
+            }
+            result.append("</D:prop><D:status>HTTP/1.1 200 OK</D:status></D:propstat></D:response>\n");
+        }
+        result.append("</D:multistatus>\n");
+        respond(exchange, 207, result.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] requestBody(HttpExchange exchange) throws IOException {
+        InputStream src;
+
+        src = exchange.getRequestBody();
+        if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            src = new GZIPInputStream(src);
+        }
+        try (InputStream in = src) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** the jdk server drops the connection after responses with length -1; send an empty chunked body instead */
+    private static void empty(HttpExchange exchange, int code) throws IOException {
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(code, -1);
+        } else {
+            exchange.sendResponseHeaders(code, 0);
+            exchange.getResponseBody().close();
+        }
+    }
+
+    /** chunked response, compressed if enabled */
+    private void respond(HttpExchange exchange, int code, byte[] data) throws IOException {
+        String accept;
+        OutputStream dest;
+
+        accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (gzip && accept != null && accept.contains("gzip")) {
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(code, 0);
+            dest = new GZIPOutputStream(exchange.getResponseBody());
+        } else {
+            exchange.sendResponseHeaders(code, 0);
+            dest = exchange.getResponseBody();
+        }
+        try (OutputStream out = dest) {
+            out.write(data);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.http;
+
+import net.oneandone.sushi.fs.http.model.MultiStatus;
+import net.oneandone.sushi.fs.http.model.Name;
+import net.oneandone.sushi.fs.http.model.ProtocolException;
+import net.oneandone.sushi.fs.http.model.StatusCode;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MultiStatusTest {
+    @Test
+    public void parse() throws IOException {
+        List<MultiStatus> lst;
+
+        lst = MultiStatus.fromResponse((
+                "<?xml version='1.0' encoding='utf-8'?>\n"
+                + "<D:multistatus xmlns:D='DAV:'>\n"
+                + "  <D:response>\n"
+                + "    <D:href>/dir/</D:href>\n"
+                + "    <D:propstat>\n"
+                + "      <D:prop><D:resourcetype><D:collection/></D:resourcetype></D:prop>\n"
+                + "      <D:status>HTTP/1.1 200 OK</D:status>\n"
+                + "    </D:propstat>\n"
+                + "  </D:response>\n"
+                + "  <D:response>\n"
+                + "    <D:href>/dir/file</D:href>\n"
+                + "    <D:propstat>\n"
+                + "      <D:prop><D:getcontentlength>42</D:getcontentlength></D:prop>\n"
+                + "      <D:status>HTTP/1.1 200 OK</D:status>\n"
+                + "    </D:propstat>\n"
+                + "  </D:response>\n"
+                + "</D:multistatus>").getBytes("UTF-8"));
+        assertEquals(2, lst.size());
+        assertEquals("/dir/", lst.get(0).href);
+        assertEquals(Name.RESOURCETYPE, lst.get(0).property.getName());
+        assertEquals("collection", ((Element) lst.get(0).property.getValue()).getLocalName());
+        assertEquals("/dir/file", lst.get(1).href);
+        assertEquals(StatusCode.OK, lst.get(1).status);
+        assertEquals("42", lst.get(1).property.getValue());
+    }
+
+    @Test
+    public void notMultistatus() throws IOException {
+        try {
+            MultiStatus.fromResponse("<foo/>".getBytes("UTF-8"));
+            fail();
+        } catch (ProtocolException e) {
+            assertTrue(e.getMessage().contains("foo"));
+        }
+    }
+}
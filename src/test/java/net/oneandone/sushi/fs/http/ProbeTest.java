@@ -0,0 +1,115 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.http;
+
+import net.oneandone.sushi.fs.World;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProbeTest {
+    private World world;
+    private LocalServer server;
+
+    @Before
+    public void before() throws Exception {
+        world = World.create(false);
+        server = new LocalServer();
+        for (int i = 0; i < 100; i++) {
+            server.files.put("/dir/file" + i, new byte[i]);
+        }
+    }
+
+    @After
+    public void after() {
+        server.close();
+    }
+
+    @Test
+    public void head() throws Exception {
+        check(false, 1);
+    }
+
+    @Test
+    public void headParallel() throws Exception {
+        check(false, 4);
+    }
+
+    @Test
+    public void propfind() throws Exception {
+        server.dav = true;
+        check(true, 1);
+        server.requests.clear();
+        check(true, 3);
+        for (String request : server.requests) {
+            assertTrue(request, request.startsWith("PROPFIND "));
+        }
+    }
+
+    @Test
+    public void propfindFallback() throws Exception {
+        check(true, 2);
+        assertTrue(server.requests.contains("HEAD /dir/file0"));
+    }
+
+    @Test
+    public void directory() throws Exception {
+        HttpNode root;
+        List<Probe> probes;
+
+        server.dav = true;
+        root = server.node(world, "");
+        probes = root.getRoot().probe(List.of(root.join("dir"), root.join("nosuchdir")), true, 1);
+        assertTrue(probes.get(0).exists);
+        assertTrue(probes.get(0).directory);
+        assertFalse(probes.get(1).exists);
+        assertEquals(0, root.getRoot().getAllocated());
+    }
+
+    private void check(boolean propfind, int connections) throws Exception {
+        HttpNode dir;
+        List<HttpNode> nodes;
+        List<Probe> probes;
+        Probe probe;
+
+        dir = server.node(world, "dir");
+        nodes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            nodes.add(dir.join("file" + i));
+            nodes.add(dir.join("missing" + i));
+        }
+        probes = dir.getRoot().probe(nodes, propfind, connections);
+        assertEquals(nodes.size(), probes.size());
+        for (int i = 0; i < 100; i++) {
+            probe = probes.get(i * 2);
+            assertTrue(probe.toString(), probe.exists);
+            assertFalse(probe.directory);
+            assertEquals(i, probe.size);
+            assertEquals(nodes.get(i * 2), probe.node);
+            probe = probes.get(i * 2 + 1);
+            assertFalse(probe.toString(), probe.exists);
+            assertEquals(404, probe.status);
+        }
+        assertEquals(0, dir.getRoot().getAllocated());
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.http;
+
+import net.oneandone.sushi.fs.World;
+import net.oneandone.sushi.fs.file.FileNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RangeTest {
+    private static final World WORLD;
+
+    static {
+        try {
+            WORLD = World.create(false);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private LocalServer server;
+    private byte[] data;
+    private HttpNode node;
+
+    @Before
+    public void before() throws Exception {
+        server = new LocalServer();
+        data = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(data);
+        server.files.put("/file", data);
+        node = server.node(WORLD, "file");
+    }
+
+    @After
+    public void after() {
+        server.close();
+    }
+
+    @Test
+    public void range() throws IOException {
+        checkRange();
+    }
+
+    @Test
+    public void rangeFallback() throws IOException {
+        server.ranges = false;
+        checkRange();
+    }
+
+    private void checkRange() throws IOException {
+        assertTrue(Arrays.equals(Arrays.copyOfRange(data, 10, 20), read(node.newInputStream(10, 10))));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(data, 100, data.length), read(node.newInputStream(100, -1))));
+        assertEquals(0, read(node.newInputStream(data.length, -1)).length);
+        // connections are returned to the pool
+        assertEquals(0, node.getRoot().getAllocated());
+    }
+
+    @Test
+    public void rangeFallbackSkip() throws IOException {
+        InputStream src;
+
+        server.ranges = false;
+        src = node.newInputStream(10, 10);
+        assertTrue(src.available() <= 10);
+        assertEquals(4, src.skip(4));
+        assertEquals(6, src.skip(100));
+        assertEquals(0, src.skip(100));
+        assertEquals(-1, src.read());
+        src.close();
+        assertEquals(0, node.getRoot().getAllocated());
+    }
+
+    @Test
+    public void copyFileToSkip() throws IOException {
+        ByteArrayOutputStream dest;
+
+        dest = new ByteArrayOutputStream();
+        assertEquals(data.length - 5, node.copyFileTo(dest, 5));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(data, 5, data.length), dest.toByteArray()));
+        assertEquals("bytes=5-", server.requestHeaders.get(server.requestHeaders.size() - 1).get("Range").get(0));
+        assertEquals(0, node.copyFileTo(new ByteArrayOutputStream(), data.length + 1));
+    }
+
+    @Test
+    public void download() throws IOException {
+        download(4);
+    }
+
+    @Test
+    public void downloadFallback() throws IOException {
+        server.ranges = false;
+        download(4);
+    }
+
+    @Test
+    public void downloadRangesIgnored() throws IOException {
+        // the first segment is partial content, the others get the full file
+        server.rangeBudget.set(1);
+        download(4);
+    }
+
+    @Test
+    public void downloadSequential() throws IOException {
+        download(1);
+    }
+
+    private void download(int connections) throws IOException {
+        FileNode file;
+
+        file = WORLD.getTemp().createTempFile();
+        assertEquals(data.length, node.downloadTo(file, connections));
+        assertTrue(Arrays.equals(data, file.readBytes()));
+        assertEquals(0, node.getRoot().getAllocated());
+        if (server.ranges && connections > 1) {
+            assertTrue(server.requests.stream().filter(r -> r.startsWith("GET")).count() > 1);
+        }
+        file.deleteFile();
+    }
+
+    private static byte[] read(InputStream src) throws IOException {
+        try (InputStream in = src) {
+            return in.readAllBytes();
+        }
+    }
+}
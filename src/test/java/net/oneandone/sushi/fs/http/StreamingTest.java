@@ -0,0 +1,105 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.http;
+
+import net.oneandone.sushi.fs.World;
+import net.oneandone.sushi.fs.http.model.Body;
+import net.oneandone.sushi.fs.http.model.Method;
+import net.oneandone.sushi.fs.http.model.MultiStatus;
+import net.oneandone.sushi.fs.http.model.Name;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingTest {
+    private World world;
+    private LocalServer server;
+
+    @Before
+    public void before() throws Exception {
+        world = World.create(false);
+        server = new LocalServer();
+    }
+
+    @After
+    public void after() {
+        server.close();
+    }
+
+    @Test
+    public void post() throws Exception {
+        HttpNode node;
+        byte[] data;
+
+        node = server.node(world, "echo");
+        data = new byte[100000];
+        Arrays.fill(data, (byte) 'a');
+        try (InputStream src = node.postStream(body(data))) {
+            assertEquals('a', src.read());
+        }
+        assertEquals(0, node.getRoot().getAllocated());
+        // the connection is re-used and must not contain the rest of the previous response
+        assertEquals("hello", node.post("hello"));
+        try (InputStream src = node.patchStream(body("world".getBytes()))) {
+            assertEquals("world", new String(src.readAllBytes()));
+        }
+        assertEquals(0, node.getRoot().getAllocated());
+    }
+
+    @Test
+    public void propfind() throws Exception {
+        HttpNode dir;
+        List<String> names;
+        List<MultiStatus> lst;
+
+        server.dav = true;
+        server.files.put("/dir/a", "1".getBytes());
+        server.files.put("/dir/b", "22".getBytes());
+        server.files.put("/dir/sub/c", "333".getBytes());
+        dir = server.node(world, "dir");
+        names = new ArrayList<>();
+        for (HttpNode child : dir.list()) {
+            names.add(child.getName());
+        }
+        Collections.sort(names);
+        assertEquals(Arrays.asList("a", "b", "sub"), names);
+        // list switched the node to directory requests
+        try (InputStream src = Method.propfindStream(dir, Name.DISPLAYNAME, 1)) {
+            assertEquals('<', src.read());
+        }
+        assertEquals(0, dir.getRoot().getAllocated());
+        lst = Method.propfind(dir, Name.DISPLAYNAME, 1);
+        assertEquals(4, lst.size());
+        assertEquals(2, dir.join("b").size());
+        assertTrue(dir.join("sub").isDirectory());
+        assertEquals(0, dir.getRoot().getAllocated());
+    }
+
+    private static Body body(byte[] data) {
+        return new Body(null, null, data.length, new ByteArrayInputStream(data), false);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.fs.http;
+
+import com.sun.net.httpserver.Headers;
+import net.oneandone.sushi.fs.FileNotFoundException;
+import net.oneandone.sushi.fs.World;
+import net.oneandone.sushi.fs.file.FileNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class UploadTest {
+    private World world;
+    private LocalServer server;
+    private byte[] data;
+    private FileNode file;
+
+    @Before
+    public void before() throws Exception {
+        world = World.create(false);
+        server = new LocalServer();
+        data = new byte[1024 * 1024 + 17];
+        new Random(7).nextBytes(data);
+        file = world.getTemp().createTempFile().writeBytes(data);
+    }
+
+    @After
+    public void after() throws Exception {
+        server.close();
+        file.deleteFile();
+    }
+
+    @Test
+    public void put() throws Exception {
+        HttpNode node;
+
+        node = server.node(world, "put");
+        node.put(file);
+        assertArrayEquals(data, server.files.get("/put"));
+        assertEquals(Integer.toString(data.length), putHeaders().getFirst("Content-Length"));
+        assertNull(putHeaders().getFirst("Transfer-Encoding"));
+        assertEquals(0, node.getRoot().getAllocated());
+        // connection is re-usable
+        node.put(file);
+        assertArrayEquals(data, node.readBytes());
+    }
+
+    @Test
+    public void copy() throws Exception {
+        HttpNode node;
+
+        node = server.node(world, "copy");
+        file.copy(node);
+        assertArrayEquals(data, server.files.get("/copy"));
+        assertEquals(Integer.toString(data.length), putHeaders().getFirst("Content-Length"));
+    }
+
+    @Test
+    public void copyFileFrom() throws Exception {
+        HttpNode node;
+
+        node = server.node(world, "from");
+        node.copyFileFrom(file);
+        assertArrayEquals(data, server.files.get("/from"));
+        assertEquals(Integer.toString(data.length), putHeaders().getFirst("Content-Length"));
+        try (InputStream src = file.newInputStream()) {
+            node.copyFileFrom(src);
+        }
+        assertArrayEquals(data, server.files.get("/from"));
+    }
+
+    @Test
+    public void compressed() throws Exception {
+        HttpNode node;
+
+        node = server.node(world, "gzip");
+        node.getRoot().getFilesystem().setCompressRequests(true);
+        node.put(file);
+        assertArrayEquals(data, server.files.get("/gzip"));
+        assertEquals("chunked", putHeaders().getFirst("Transfer-Encoding"));
+    }
+
+    @Test
+    public void notFound() throws Exception {
+        try {
+            server.node(world, "x").put(world.getTemp().join("nosuchfile"));
+            fail();
+        } catch (FileNotFoundException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void chunkSize() throws Exception {
+        HttpNode node;
+
+        node = server.node(world, "chunked");
+        node.getRoot().getFilesystem().setChunkSize(100000);
+        try (OutputStream dest = node.newOutputStream()) {
+            for (byte b : data) {
+                dest.write(b);
+            }
+        }
+        assertArrayEquals(data, server.files.get("/chunked"));
+    }
+
+    /** @return headers of the first PUT request */
+    private Headers putHeaders() {
+        for (int i = 0; i < server.requests.size(); i++) {
+            if (server.requests.get(i).startsWith("PUT")) {
+                return server.requestHeaders.get(i);
+            }
+        }
+        throw new IllegalStateException();
+    }
+}
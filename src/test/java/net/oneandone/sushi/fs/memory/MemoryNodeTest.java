@@ -16,6 +16,18 @@
 package net.oneandone.sushi.fs.memory;
 
 import net.oneandone.sushi.fs.NodeTest;
+import net.oneandone.sushi.fs.World;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class MemoryNodeTest extends NodeTest<MemoryNode> {
     @Override
@@ -28,4 +40,135 @@ public class MemoryNodeTest extends NodeTest<MemoryNode> {
         // nothing to check
     }
 
+    @Test
+    public void noPhantomEntries() throws Exception {
+        MemoryNode dir;
+
+        dir = work.join("dir");
+        dir.mkdir();
+        assertFalse(dir.join("a").exists());
+        assertFalse(dir.join("a/b/c").isDirectory());
+        assertEquals(0, dir.list().size());
+        dir.deleteDirectory();
+    }
+
+    @Test
+    public void copyFileSharesBlocks() throws Exception {
+        MemoryNode src;
+        MemoryNode dest;
+        byte[] data;
+
+        data = new byte[Blocks.SIZE * 2 + 17];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        src = work.join("src").writeBytes(data);
+        dest = work.join("dest");
+        src.copyFile(dest);
+        assertTrue(Arrays.equals(data, dest.readBytes()));
+        try (OutputStream out = dest.newAppendStream()) {
+            out.write(new byte[] { 1, 2, 3 });
+        }
+        assertEquals(data.length, src.size());
+        assertEquals(data.length + 3, dest.size());
+        assertTrue(Arrays.equals(data, src.readBytes()));
+        assertEquals(data.length - 5 + 3, dest.copyFileTo(new ByteArrayOutputStream(), 5));
+    }
+
+    @Test
+    public void budget() throws Exception {
+        World world;
+        MemoryFilesystem filesystem;
+        MemoryNode dir;
+        byte[] data;
+
+        world = World.createMinimal();
+        filesystem = world.getMemoryFilesystem();
+        filesystem.setMaxInMemorySize(Blocks.SIZE * 4);
+        filesystem.setMemoryBudget(Blocks.SIZE * 3);
+        filesystem.setOffHeap(true);
+        dir = filesystem.root().node("", null);
+        data = new byte[Blocks.SIZE];
+        data[7] = 7;
+        dir.join("a").writeBytes(data);
+        dir.join("b").writeBytes(data);
+        dir.join("c").writeBytes(data);
+        dir.join("a").readBytes();
+        assertEquals(Blocks.SIZE * 3, filesystem.getResidentBytes());
+        assertEquals(0, filesystem.getSpilledBytes());
+        dir.join("d").writeBytes(data);
+        assertEquals(Blocks.SIZE * 3, filesystem.getResidentBytes());
+        assertEquals(Blocks.SIZE, filesystem.getSpilledBytes());
+        // b is least recently used
+        assertTrue(Arrays.equals(data, dir.join("b").readBytes()));
+        dir.join("b").deleteFile();
+        assertEquals(0, filesystem.getSpilledBytes());
+        dir.join("a").deleteFile();
+        assertEquals(Blocks.SIZE * 2, filesystem.getResidentBytes());
+        world.close();
+    }
+
+    @Test
+    public void collectedRoot() throws Exception {
+        World world;
+        MemoryFilesystem filesystem;
+        MemoryRoot root;
+
+        world = World.createMinimal();
+        filesystem = world.getMemoryFilesystem();
+        filesystem.setMaxInMemorySize(Blocks.SIZE);
+        root = new MemoryRoot(filesystem, 1000);
+        root.node("a", null).writeBytes(new byte[10]);
+        root.node("b", null).writeBytes(new byte[Blocks.SIZE * 2]);
+        assertEquals(10, filesystem.getResidentBytes());
+        assertEquals(Blocks.SIZE * 2, filesystem.getSpilledBytes());
+        root = null;
+        for (int i = 0; i < 100 && filesystem.getSpilledBytes() != 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(0, filesystem.getResidentBytes());
+        assertEquals(0, filesystem.getSpilledBytes());
+        world.close();
+    }
+
+    @Test
+    public void concurrentWrites() throws Exception {
+        final MemoryNode dir;
+        List<Thread> threads;
+        Thread thread;
+        final List<Throwable> errors;
+
+        dir = work.join("concurrent").mkdir();
+        threads = new ArrayList<>();
+        errors = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final int no = i;
+            thread = new Thread(() -> {
+                try {
+                    MemoryNode sub;
+
+                    sub = dir.join("t" + no).mkdir();
+                    for (int j = 0; j < 100; j++) {
+                        sub.join("f" + j).writeString("x");
+                        sub.join("f" + j).readString();
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(8, dir.list().size());
+        assertEquals(100, dir.join("t3").list().size());
+        dir.deleteTree();
+    }
+
 }
\ No newline at end of file
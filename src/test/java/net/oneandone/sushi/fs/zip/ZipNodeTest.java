@@ -25,15 +25,20 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.util.Arrays;
 import java.util.List;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /** Accesses external hosts and might need proxy configuration =&gt; Full test */
 public class ZipNodeTest {
@@ -85,6 +90,55 @@ public class ZipNodeTest {
         assertTrue(assrt.isFile());
     }
 
+    @Test
+    public void map() throws Exception {
+        FileNode file;
+        byte[] data;
+        CRC32 crc;
+        ZipEntry entry;
+        ZipNode zip;
+        ByteBuffer buffer;
+        SeekableByteChannel channel;
+
+        file = world.getTemp().createTempFile();
+        data = "stored content".getBytes("US-ASCII");
+        crc = new CRC32();
+        crc.update(data);
+        try (ZipOutputStream out = new ZipOutputStream(file.newOutputStream())) {
+            entry = new ZipEntry("stored");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(data.length);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(data);
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("dir/deflated"));
+            out.write(data);
+            out.closeEntry();
+        }
+        zip = file.openZip();
+        buffer = zip.join("stored").map();
+        assertTrue(buffer.isDirect());
+        assertEquals(data.length, buffer.remaining());
+        assertEquals('s', buffer.get(0));
+        assertEquals('t', buffer.get(data.length - 1));
+        buffer = zip.join("dir/deflated").map();
+        assertEquals(data.length, buffer.remaining());
+        assertEquals('s', buffer.get(0));
+        channel = zip.join("stored").newByteChannel();
+        channel.position(7);
+        buffer = ByteBuffer.allocate(7);
+        assertEquals(7, channel.read(buffer));
+        assertEquals("content", new String(buffer.array(), "US-ASCII"));
+        channel.close();
+        try {
+            zip.join("dir").map();
+            fail();
+        } catch (FileNotFoundException e) {
+            // ok
+        }
+    }
+
     @Test
     public void type() throws Exception {
         FileNode jar;
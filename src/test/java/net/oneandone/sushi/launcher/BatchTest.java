@@ -0,0 +1,119 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.launcher;
+
+import net.oneandone.sushi.fs.World;
+import net.oneandone.sushi.fs.file.FileNode;
+import net.oneandone.sushi.io.OS;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchTest {
+    private static final World WORLD = World.createMinimal();
+
+    @Test
+    public void empty() throws Failure {
+        assertEquals(0, new Batch(2).run().size());
+    }
+
+    @Test
+    public void outputs() throws Failure {
+        Batch batch;
+        List<Batch.Result> results;
+
+        batch = new Batch(3);
+        for (int i = 0; i < 10; i++) {
+            batch.add(launcher("echo", Integer.toString(i)));
+        }
+        results = batch.run();
+        assertEquals(10, results.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i + "\n", results.get(i).output);
+            assertEquals(0, results.get(i).exitCode);
+            assertNull(results.get(i).failure);
+        }
+    }
+
+    @Test
+    public void merged() throws Failure {
+        StringWriter dest;
+        Batch batch;
+        List<String> lines;
+
+        if (OS.CURRENT == OS.WINDOWS) {
+            return;
+        }
+        dest = new StringWriter();
+        batch = new Batch(4).merge(dest, "\n");
+        batch.add(launcher("bash", "-c", "echo a1 && echo a2"), "a: ");
+        batch.add(launcher("bash", "-c", "echo b1 && echo b2"), "b: ");
+        batch.run();
+        lines = Arrays.asList(dest.toString().split("\n"));
+        assertEquals(4, lines.size());
+        assertTrue(lines.contains("a: a1"));
+        assertTrue(lines.contains("a: a2"));
+        assertTrue(lines.contains("b: b1"));
+        assertTrue(lines.contains("b: b2"));
+        assertTrue(lines.indexOf("a: a1") < lines.indexOf("a: a2"));
+    }
+
+    @Test
+    public void collectAll() throws Failure {
+        List<Batch.Result> results;
+
+        if (OS.CURRENT == OS.WINDOWS) {
+            return;
+        }
+        results = new Batch(2).add(launcher("true")).add(launcher("bash", "-c", "exit 3")).add(launcher("true")).run();
+        assertEquals(0, results.get(0).exitCode);
+        assertEquals(3, results.get(1).exitCode);
+        assertNotNull(results.get(1).failure);
+        assertEquals(0, results.get(2).exitCode);
+    }
+
+    @Test
+    public void failFast() {
+        Batch batch;
+
+        if (OS.CURRENT == OS.WINDOWS) {
+            return;
+        }
+        batch = new Batch(2).failFast(true);
+        batch.add(launcher("sleep", "30"));
+        batch.add(launcher("bash", "-c", "exit 3"));
+        try {
+            batch.run();
+            fail();
+        } catch (ExitCode e) {
+            assertEquals(3, e.code);
+        } catch (Failure e) {
+            fail(e.getMessage());
+        }
+    }
+
+    private Launcher launcher(String... args) {
+        return new Launcher((FileNode) WORLD.getHome(), args);
+    }
+}
@@ -15,16 +15,20 @@
  */
 package net.oneandone.sushi.launcher;
 
+import net.oneandone.sushi.fs.Node;
 import net.oneandone.sushi.fs.World;
 import net.oneandone.sushi.fs.file.FileNode;
 import net.oneandone.sushi.io.OS;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.Arrays;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -165,6 +169,80 @@ public class LauncherTest {
         assertEquals("hi", handle.awaitString());
     }
 
+    @Test
+    public void bytes() throws Failure {
+        ByteArrayOutputStream out;
+
+        if (OS.CURRENT == OS.WINDOWS) {
+            return;
+        }
+        out = new ByteArrayOutputStream();
+        launch("printf", "\\377\\000\\303").exec(out);
+        assertTrue(Arrays.equals(new byte[] { (byte) 0xff, 0, (byte) 0xc3 }, out.toByteArray()));
+    }
+
+    @Test
+    public void redirectFile() throws IOException {
+        FileNode file;
+
+        if (OS.CURRENT == OS.WINDOWS) {
+            return;
+        }
+        file = WORLD.getTemp().createTempFile();
+        launch("printf", "\\377\\000").exec(file);
+        assertTrue(Arrays.equals(new byte[] { (byte) 0xff, 0 }, file.readBytes()));
+        file.deleteFile();
+    }
+
+    @Test
+    public void redirectNode() throws IOException {
+        Node<?> node;
+
+        if (OS.CURRENT == OS.WINDOWS) {
+            return;
+        }
+        node = WORLD.memoryNode();
+        launch("printf", "\\377\\000").exec(node);
+        assertTrue(Arrays.equals(new byte[] { (byte) 0xff, 0 }, node.readBytes()));
+    }
+
+    @Test
+    public void redirectFailure() throws IOException {
+        FileNode file;
+
+        if (OS.CURRENT == OS.WINDOWS) {
+            return;
+        }
+        file = WORLD.getTemp().createTempFile();
+        try {
+            launch("bash", "-c", "echo out && echo err 1>&2 && exit 1").exec(file);
+            fail();
+        } catch (ExitCode e) {
+            assertEquals("err", e.output.trim());
+        }
+        assertEquals("out\n", file.readString());
+        file.deleteFile();
+    }
+
+    @Test
+    public void writerFailure() throws IOException {
+        StringWriter out;
+        StringWriter err;
+
+        if (OS.CURRENT == OS.WINDOWS) {
+            return;
+        }
+        out = new StringWriter();
+        err = new StringWriter();
+        try {
+            launch("bash", "-c", "echo out && echo err 1>&2 && exit 1").exec(out, err);
+            fail();
+        } catch (ExitCode e) {
+            assertFalse(e.output.contains("err"));
+        }
+        assertEquals("err\n", err.toString());
+    }
+
     @Test
     public void failure() throws Failure {
         try {
@@ -0,0 +1,61 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.launcher;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PumperTest {
+    @Test
+    public void bytesAreNotDecoded() throws Failure {
+        byte[] data;
+        ByteArrayOutputStream dest;
+        Pumper pumper;
+
+        data = new byte[20000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        dest = new ByteArrayOutputStream();
+        pumper = Pumper.create(new ByteArrayInputStream(data), dest, true, false, "US-ASCII");
+        assertEquals(dest, pumper.getDestStream());
+        assertNull(pumper.getDest());
+        pumper.start();
+        pumper.finish(new Launcher("foo"));
+        assertTrue(Arrays.equals(data, dest.toByteArray()));
+    }
+
+    @Test
+    public void chars() throws Failure {
+        StringWriter dest;
+        Pumper pumper;
+
+        dest = new StringWriter();
+        pumper = Pumper.create(new StringReader("\u00e4\u00f6\u00fc"), dest, true, false, "UTF-8");
+        pumper.start();
+        pumper.finish(new Launcher("foo"));
+        assertEquals("\u00e4\u00f6\u00fc", dest.toString());
+    }
+}
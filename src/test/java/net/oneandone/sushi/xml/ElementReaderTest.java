@@ -0,0 +1,120 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.xml;
+
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ElementReaderTest {
+    private static final String DOC = "<a:root xmlns:a='urn:a'>"
+            + "<a:item id='1'>one<b>bee</b></a:item>"
+            + "<other><a:item id='x'/></other>"
+            + "<a:item id='2'><![CDATA[<two>]]></a:item>"
+            + "<item id='3'/>"
+            + "</a:root>";
+
+    @Test
+    public void items() throws Exception {
+        List<Element> items;
+
+        items = collect("root/item", null);
+        assertEquals(3, items.size());
+        assertEquals("1", items.get(0).getAttribute("id"));
+        assertEquals("onebee", items.get(0).getTextContent());
+        assertEquals("bee", Dom.getString(Dom.getChildElement(items.get(0), "b")));
+        assertEquals("<two>", Dom.getString(items.get(1)));
+        assertEquals("3", items.get(2).getAttribute("id"));
+    }
+
+    @Test
+    public void namespace() throws Exception {
+        List<Element> items;
+
+        items = collect("root/item", Namespace.getNamespace("a", "urn:a"));
+        assertEquals(2, items.size());
+        assertEquals("urn:a", items.get(0).getNamespaceURI());
+        assertEquals("item", items.get(0).getLocalName());
+        assertEquals("2", items.get(1).getAttribute("id"));
+    }
+
+    @Test
+    public void inheritedNamespaces() throws Exception {
+        List<Element> items;
+
+        items = collect("root/other", null);
+        assertEquals(1, items.size());
+        assertEquals("urn:a", items.get(0).lookupNamespaceURI("a"));
+    }
+
+    @Test
+    public void nested() throws Exception {
+        List<Element> items;
+
+        items = collect("root/other/item", null);
+        assertEquals(1, items.size());
+        assertEquals("x", items.get(0).getAttribute("id"));
+        assertEquals(items.get(0), items.get(0).getOwnerDocument().getDocumentElement());
+    }
+
+    @Test
+    public void root() throws Exception {
+        assertEquals(1, collect("root", null).size());
+        assertEquals(0, collect("item", null).size());
+    }
+
+    @Test
+    public void end() throws Exception {
+        try (ElementReader reader = reader("root/other")) {
+            reader.next();
+            assertNull(reader.next());
+            assertNull(reader.next());
+            assertEquals("root", reader.getRoot().getLocalPart());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notSimple() throws Exception {
+        reader("//item");
+    }
+
+    @Test
+    public void malformed() throws IOException {
+        try (ElementReader reader = new ElementReader(new ByteArrayInputStream("<root><item></root>".getBytes()), "root/item", null)) {
+            reader.collect();
+            fail();
+        } catch (XmlException e) {
+            // ok
+        }
+    }
+
+    private static List<Element> collect(String path, Namespace namespace) throws Exception {
+        try (ElementReader reader = new ElementReader(new ByteArrayInputStream(DOC.getBytes("UTF-8")), path, namespace)) {
+            return reader.collect();
+        }
+    }
+
+    private static ElementReader reader(String path) throws Exception {
+        return new ElementReader(new ByteArrayInputStream(DOC.getBytes("UTF-8")), path, null);
+    }
+}
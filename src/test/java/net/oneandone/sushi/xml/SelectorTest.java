@@ -18,8 +18,15 @@ package net.oneandone.sushi.xml;
 import org.junit.Test;
 import org.w3c.dom.Document;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class SelectorTest {
     private static final Builder BUILDER = new Builder();
@@ -77,6 +84,65 @@ public class SelectorTest {
         assertEquals("Tue, 13 Mar 2007 18:15:09 +0100", SELECTOR.string(doc, "published/date[@format='RFC2822']"));
     }
 
+    @Test
+    public void view() {
+        Document doc;
+        List<org.w3c.dom.Node> view;
+
+        doc = BUILDER.literal("<root><a>1</a><b/><a>2</a></root>");
+        view = SELECTOR.nodesView(doc, "/root/a");
+        assertEquals(2, view.size());
+        assertEquals("2", view.get(1).getTextContent());
+        assertEquals(SELECTOR.nodes(doc, "/root/a"), view);
+        try {
+            view.add(doc);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void smallCache() throws XmlException {
+        Selector selector;
+        Document doc;
+
+        selector = new Selector(2);
+        doc = BUILDER.literal("<root><a>1</a><b>2</b><c>3</c></root>");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, selector.integer(doc, "/root/a"));
+            assertEquals(2, selector.integer(doc, "/root/b"));
+            assertEquals(3, selector.integer(doc, "/root/c"));
+        }
+    }
+
+    @Test
+    public void threads() throws Exception {
+        ExecutorService executor;
+        List<Future<Integer>> futures;
+
+        executor = Executors.newFixedThreadPool(8);
+        futures = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            // DOM is not thread-safe, not even for reads; this tests the Selector only
+            Document doc = BUILDER.literal("<root><a>1</a><a>2</a><a>3</a></root>");
+
+            futures.add(executor.submit(() -> {
+                int sum;
+
+                sum = 0;
+                for (int j = 0; j < 100; j++) {
+                    sum += SELECTOR.integer(doc, "/root/a[" + (j % 3 + 1) + "]");
+                }
+                return sum;
+            }));
+        }
+        for (Future<Integer> future : futures) {
+            assertEquals(199, (int) future.get());
+        }
+        executor.shutdown();
+    }
+
     @Test
     public void simple() {
         simple(false, "");
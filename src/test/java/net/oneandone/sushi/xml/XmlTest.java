@@ -0,0 +1,68 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.sushi.xml;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class XmlTest {
+    @Test
+    public void perThread() throws Exception {
+        Xml xml;
+        Thread thread;
+        List<Builder> other;
+
+        xml = new Xml();
+        assertSame(xml.getBuilder(), xml.getBuilder());
+        assertSame(xml.getSerializer(), xml.getSerializer());
+        assertSame(xml.getSelector(), xml.getSelector());
+        other = new ArrayList<>();
+        thread = new Thread(() -> other.add(xml.getBuilder()));
+        thread.start();
+        thread.join();
+        assertNotSame(xml.getBuilder(), other.get(0));
+    }
+
+    @Test
+    public void concurrent() throws Exception {
+        Xml xml;
+        ExecutorService executor;
+        List<Future<String>> futures;
+
+        xml = new Xml();
+        executor = Executors.newFixedThreadPool(8);
+        futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String str = Integer.toString(i);
+
+            futures.add(executor.submit(() -> xml.getSelector().string(
+                    xml.getBuilder().parseString(xml.getSerializer().serialize(xml.getBuilder().literal("<a><b>" + str + "</b></a>"))), "a/b")));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.toString(i), futures.get(i).get());
+        }
+        executor.shutdown();
+    }
+}